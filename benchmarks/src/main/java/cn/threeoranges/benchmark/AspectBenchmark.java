@@ -0,0 +1,106 @@
+package cn.threeoranges.benchmark;
+
+import cn.threeoranges.aop.CacheAspect;
+import cn.threeoranges.properties.RainbowCacheProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CacheAspect拦截开销, 对比直接调用与经过切面命中本地缓存的耗时
+ *
+ * @author: 李小熊
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AspectBenchmark {
+    private static final Long ID = 10086L;
+    private static final BenchmarkService.User USER = new BenchmarkService.User(ID);
+
+    private AnnotationConfigApplicationContext context;
+    private BenchmarkService direct;
+    private BenchmarkService proxy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext(Config.class);
+        direct = new BenchmarkService();
+        proxy = context.getBean(BenchmarkService.class);
+        // 预先写入缓存, 测试只统计命中路径
+        proxy.findCached();
+        proxy.findCached(ID);
+        proxy.findCached(USER, "vip");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String direct() {
+        return direct.find(ID);
+    }
+
+    /**
+     * 经过代理但没有缓存注解的方法
+     */
+    @Benchmark
+    public String proxyWithoutAnnotation() {
+        return proxy.find(ID);
+    }
+
+    @Benchmark
+    public String cacheHit() {
+        return proxy.findCached();
+    }
+
+    @Benchmark
+    public String cacheHitParameterKey() {
+        return proxy.findCached(ID);
+    }
+
+    @Benchmark
+    public String cacheHitSpelKey() {
+        return proxy.findCached(USER, "vip");
+    }
+
+    @Configuration
+    @EnableAspectJAutoProxy(proxyTargetClass = true)
+    public static class Config {
+
+        @Bean
+        public RainbowCacheProperties rainbowCacheProperties() {
+            return new RainbowCacheProperties();
+        }
+
+        @Bean
+        public CacheAspect cacheAspect() {
+            return new CacheAspect();
+        }
+
+        @Bean
+        public BenchmarkService benchmarkService() {
+            return new BenchmarkService();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package cn.threeoranges.benchmark;
+
+import cn.threeoranges.annotation.RainbowCache;
+
+import java.io.Serializable;
+
+/**
+ * 基准测试用的业务方法
+ *
+ * @author: 李小熊
+ **/
+public class BenchmarkService {
+
+    public String find(Long id) {
+        return "user-" + id;
+    }
+
+    @RainbowCache(keys = "benchmark:user")
+    public String findCached() {
+        return "user";
+    }
+
+    @RainbowCache(keys = "benchmark:user", dynamicKey = "#id")
+    public String findCached(Long id) {
+        return "user-" + id;
+    }
+
+    @RainbowCache(keys = "benchmark:user", dynamicKey = "#user.id + ':' + #type")
+    public String findCached(User user, String type) {
+        return type + "-" + user.getId();
+    }
+
+    public static class User implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final Long id;
+
+        public User(Long id) {
+            this.id = id;
+        }
+
+        public Long getId() {
+            return id;
+        }
+    }
+}
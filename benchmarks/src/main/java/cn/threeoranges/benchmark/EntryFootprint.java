@@ -0,0 +1,142 @@
+package cn.threeoranges.benchmark;
+
+import cn.threeoranges.cache.SimpleCache;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地缓存每个缓存项的内存占用报告(JOL)
+ * <p>
+ * 1. 缓存项对象布局; 2. 旧布局(三个装箱字段)与当前布局的单项大小;
+ * 3. SimpleCache中每个缓存项的总开销(key、map节点、有序索引、时间轮); 4. key字典编码的收益估算.
+ * <p>
+ * 运行: java -cp target/benchmarks.jar cn.threeoranges.benchmark.EntryFootprint [缓存个数]
+ *
+ * @author: 李小熊
+ **/
+public class EntryFootprint {
+    private static final String[] NAMESPACES = {"user", "order", "product:detail"};
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        System.out.println(VM.current().details());
+
+        System.out.println("== 缓存项布局");
+        for (String name : new String[]{"cn.threeoranges.cache.ValueObject",
+                "cn.threeoranges.cache.ValueObject$Expiring", "cn.threeoranges.cache.LongValueObject"}) {
+            System.out.println(ClassLayout.parseClass(Class.forName(name)).toPrintable());
+        }
+        System.out.println(ClassLayout.parseClass(LegacyValueObject.class).toPrintable());
+
+        System.out.println("== 单个缓存项(不含缓存值)");
+        String value = "value";
+        long now = System.currentTimeMillis();
+        long legacy = GraphLayout.parseInstance(new LegacyValueObject(value, 3600L, now + 3600000L)).totalSize();
+        long legacyImmortal = GraphLayout.parseInstance(new LegacyValueObject(value, -1L, -1L)).totalSize();
+        long valueSize = GraphLayout.parseInstance(value).totalSize();
+        SimpleCache cache = SimpleCache.simpleCache();
+        cache.setCache("immortal", value);
+        cache.setCache("expiring", value, 1, TimeUnit.HOURS);
+        cache.setLong("counter", 1L);
+        cache.setLong("expiringCounter", 1L, 1, TimeUnit.HOURS);
+        System.out.printf("旧布局 有过期时间     %4d bytes%n", legacy - valueSize);
+        System.out.printf("旧布局 永久有效(-1L缓存) %4d bytes%n", legacyImmortal - valueSize);
+        System.out.printf("永久有效               %4d bytes%n", entrySize(cache, "immortal") - valueSize);
+        System.out.printf("有过期时间             %4d bytes%n", entrySize(cache, "expiring") - valueSize);
+        System.out.printf("long计数               %4d bytes%n", entrySize(cache, "counter"));
+        System.out.printf("long计数 有过期时间    %4d bytes%n", entrySize(cache, "expiringCounter"));
+        cache.delete("immortal");
+        cache.delete("expiring");
+        cache.delete("counter");
+        cache.delete("expiringCounter");
+
+        System.out.println();
+        System.out.println("== SimpleCache中每个缓存项的总开销(" + count + "个, 一半有过期时间, 值为共享的字符串)");
+        Object[] roots = internals(cache);
+        long before = GraphLayout.parseInstance(roots).totalSize();
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String key = NAMESPACES[i % NAMESPACES.length] + ":" + i;
+            keys.add(key);
+            if ((i & 1) == 0) {
+                cache.setCache(key, value);
+            } else {
+                cache.setCache(key, value, 1, TimeUnit.HOURS);
+            }
+        }
+        long after = GraphLayout.parseInstance(roots).totalSize();
+        long keyBytes = GraphLayout.parseInstance(keys.toArray()).totalSize()
+                - GraphLayout.parseInstance((Object) new Object[count]).totalSize();
+        System.out.printf("总计 %.1f bytes/项, 其中key %.1f bytes/项%n",
+                (double) (after - before) / count, (double) keyBytes / count);
+
+        System.out.println();
+        System.out.println("== key字典编码(namespace编号 + dynamicKey)");
+        List<EncodedKey> encodedKeys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            encodedKeys.add(new EncodedKey(i % NAMESPACES.length, String.valueOf(i)));
+        }
+        long encodedBytes = GraphLayout.parseInstance(encodedKeys.toArray()).totalSize()
+                - GraphLayout.parseInstance((Object) new Object[count]).totalSize();
+        System.out.printf("String key %.1f bytes/项, 字典编码 %.1f bytes/项%n",
+                (double) keyBytes / count, (double) encodedBytes / count);
+        for (String key : keys) {
+            cache.delete(key);
+        }
+    }
+
+    private static long entrySize(SimpleCache cache, String key) throws Exception {
+        return GraphLayout.parseInstance(caches(cache).get(key)).totalSize();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static java.util.Map<String, Object> caches(SimpleCache cache) throws Exception {
+        Field field = SimpleCache.class.getDeclaredField("caches");
+        field.setAccessible(true);
+        return (java.util.Map<String, Object>) field.get(cache);
+    }
+
+    private static Object[] internals(SimpleCache cache) throws Exception {
+        List<Object> roots = new ArrayList<>();
+        for (String name : new String[]{"caches", "index", "segments"}) {
+            Field field = SimpleCache.class.getDeclaredField(name);
+            field.setAccessible(true);
+            roots.add(field.get(cache));
+        }
+        return roots.toArray();
+    }
+
+    /**
+     * 调整前的缓存项布局
+     */
+    private static final class LegacyValueObject {
+        private final Long expiration;
+        private final Object value;
+        private final Long destroyTime;
+
+        private LegacyValueObject(Object value, Long expiration, Long destroyTime) {
+            this.value = value;
+            this.expiration = expiration;
+            this.destroyTime = destroyTime;
+        }
+    }
+
+    /**
+     * 字典编码的key
+     */
+    private static final class EncodedKey {
+        private final int namespace;
+        private final String dynamicKey;
+
+        private EncodedKey(int namespace, String dynamicKey) {
+            this.namespace = namespace;
+            this.dynamicKey = dynamicKey;
+        }
+    }
+}
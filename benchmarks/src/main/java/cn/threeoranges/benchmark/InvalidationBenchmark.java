@@ -0,0 +1,103 @@
+package cn.threeoranges.benchmark;
+
+import cn.threeoranges.cache.SimpleCache;
+import cn.threeoranges.properties.RainbowCacheProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按前缀清除本地缓存(keys(prefix) + delete)的耗时, 缓存总量从10^4到10^7
+ * <p>
+ * 每个前缀下有GROUP_SIZE个key. invalidate清除一个前缀后立即写回, 保持缓存总量不变,
+ * 与refill(覆盖写入同一组key)的差值约为清除本身的开销.
+ *
+ * @author: 李小熊
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class InvalidationBenchmark {
+    private static final int GROUP_SIZE = 100;
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    private int entries;
+
+    private final SimpleCache simpleCache = SimpleCache.simpleCache();
+    private String[] prefixes;
+    private String[][] keys;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        simpleCache.delete(new HashSet<>(simpleCache.keys()));
+        simpleCache.configure(new RainbowCacheProperties());
+
+        int groups = entries / GROUP_SIZE;
+        prefixes = new String[groups];
+        keys = new String[groups][GROUP_SIZE];
+        for (int group = 0; group < groups; group++) {
+            prefixes[group] = "benchmark:" + group + ":";
+            for (int i = 0; i < GROUP_SIZE; i++) {
+                keys[group][i] = prefixes[group] + i;
+                simpleCache.setCache(keys[group][i], i);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        simpleCache.delete(new HashSet<>(simpleCache.keys()));
+    }
+
+    @Benchmark
+    public Set<String> lookup() {
+        return simpleCache.keys(prefixes[next()]);
+    }
+
+    @Benchmark
+    public int invalidate() {
+        int group = next();
+        Set<String> matched = simpleCache.keys(prefixes[group]);
+        simpleCache.delete(matched);
+        refill(group);
+        return matched.size();
+    }
+
+    @Benchmark
+    public int refill() {
+        int group = next();
+        refill(group);
+        return group;
+    }
+
+    private int next() {
+        int group = cursor;
+        cursor = group + 1 == prefixes.length ? 0 : group + 1;
+        return group;
+    }
+
+    private void refill(int group) {
+        String[] groupKeys = keys[group];
+        for (int i = 0; i < groupKeys.length; i++) {
+            simpleCache.setCache(groupKeys[i], i);
+        }
+    }
+}
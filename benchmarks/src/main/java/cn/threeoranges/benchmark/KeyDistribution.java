@@ -0,0 +1,71 @@
+package cn.threeoranges.benchmark;
+
+import java.util.Random;
+
+/**
+ * 基准测试的key访问分布
+ *
+ * @author: 李小熊
+ **/
+public enum KeyDistribution {
+    /**
+     * 均匀分布, 每个key被访问的概率相同
+     */
+    UNIFORM {
+        @Override
+        int[] sequence(int size, int length, long seed) {
+            Random random = new Random(seed);
+            int[] sequence = new int[length];
+            for (int i = 0; i < length; i++) {
+                sequence[i] = random.nextInt(size);
+            }
+            return sequence;
+        }
+    },
+    /**
+     * Zipfian分布(s=0.99), 少量热点key占大部分访问
+     */
+    ZIPFIAN {
+        @Override
+        int[] sequence(int size, int length, long seed) {
+            double[] cdf = new double[size];
+            double sum = 0d;
+            for (int i = 0; i < size; i++) {
+                sum += 1d / Math.pow(i + 1, 0.99d);
+                cdf[i] = sum;
+            }
+            Random random = new Random(seed);
+            int[] sequence = new int[length];
+            for (int i = 0; i < length; i++) {
+                int rank = search(cdf, random.nextDouble() * sum);
+                // 打散热点key, 避免热点集中在相邻的key上
+                sequence[i] = (int) ((rank * 0x9E3779B97F4A7C15L >>> 1) % size);
+            }
+            return sequence;
+        }
+    };
+
+    /**
+     * 生成访问序列
+     *
+     * @param size   key个数
+     * @param length 序列长度
+     * @param seed   随机种子
+     * @return key下标序列
+     */
+    abstract int[] sequence(int size, int length, long seed);
+
+    private static int search(double[] cdf, double value) {
+        int low = 0;
+        int high = cdf.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cdf[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
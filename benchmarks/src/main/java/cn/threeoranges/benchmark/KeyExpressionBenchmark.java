@@ -0,0 +1,78 @@
+package cn.threeoranges.benchmark;
+
+import cn.threeoranges.cache.Cacheable;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cacheable.getValue计算dynamicKey的耗时
+ * <p>
+ * 通过一个只记录连接点的切面拿到真实的ProceedingJoinPoint
+ *
+ * @author: 李小熊
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyExpressionBenchmark {
+    private ProceedingJoinPoint parameterJoinPoint;
+    private ProceedingJoinPoint spelJoinPoint;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CaptureAspect aspect = new CaptureAspect();
+        AspectJProxyFactory factory = new AspectJProxyFactory(new BenchmarkService());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        BenchmarkService service = factory.getProxy();
+
+        service.findCached(10086L);
+        parameterJoinPoint = aspect.joinPoint;
+        service.findCached(new BenchmarkService.User(10086L), "vip");
+        spelJoinPoint = aspect.joinPoint;
+    }
+
+    @Benchmark
+    public String empty() {
+        return Cacheable.getValue(parameterJoinPoint, "");
+    }
+
+    @Benchmark
+    public String parameter() {
+        return Cacheable.getValue(parameterJoinPoint, "#id");
+    }
+
+    @Benchmark
+    public String spel() {
+        return Cacheable.getValue(spelJoinPoint, "#user.id + ':' + #type");
+    }
+
+    @Aspect
+    public static class CaptureAspect {
+        private volatile ProceedingJoinPoint joinPoint;
+
+        @Around("execution(* cn.threeoranges.benchmark.BenchmarkService.findCached(..))")
+        public Object capture(ProceedingJoinPoint pjp) throws Throwable {
+            joinPoint = pjp;
+            return pjp.proceed();
+        }
+    }
+}
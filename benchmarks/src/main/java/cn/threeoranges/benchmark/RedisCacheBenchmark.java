@@ -0,0 +1,128 @@
+package cn.threeoranges.benchmark;
+
+import cn.threeoranges.cache.RedisCache;
+import cn.threeoranges.codec.CodecRedisSerializer;
+import cn.threeoranges.codec.RainbowCacheCodec;
+import cn.threeoranges.properties.RainbowCacheProperties;
+import cn.threeoranges.properties.enums.RainbowCacheCodecEnum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import redis.embedded.RedisServer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis缓存读写耗时, 使用嵌入式Redis, 不依赖外部环境
+ * <p>
+ * 可通过 -Dbenchmark.redis.port 指定端口
+ *
+ * @author: 李小熊
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisCacheBenchmark {
+    private static final String NAMESPACE = "benchmark:user";
+    private static final int SIZE = 1000;
+
+    @Param({"JDK", "COMPACT"})
+    private RainbowCacheCodecEnum codec;
+
+    private RedisServer redisServer;
+    private LettuceConnectionFactory connectionFactory;
+    private RedisCache redisCache;
+    private String[] keys;
+    private Map<String, Object> value;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int port = Integer.getInteger("benchmark.redis.port", 16379);
+        redisServer = RedisServer.builder().port(port).setting("save \"\"").build();
+        redisServer.start();
+
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        RainbowCacheProperties properties = new RainbowCacheProperties();
+        properties.setCodec(codec);
+        CodecRedisSerializer serializer = new CodecRedisSerializer(RainbowCacheCodec.create(properties, null));
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(RedisSerializer.string());
+        redisTemplate.setValueSerializer(serializer);
+        redisTemplate.afterPropertiesSet();
+        redisCache = new RedisCache(redisTemplate);
+
+        value = new HashMap<>();
+        value.put("id", 10086L);
+        value.put("name", "rainbow");
+        value.put("tags", Arrays.asList("a", "b", "c"));
+        keys = new String[SIZE];
+        RedisCache.Batch batch = redisCache.batch();
+        for (int i = 0; i < SIZE; i++) {
+            keys[i] = NAMESPACE + ":" + i;
+            batch.set(NAMESPACE, keys[i], value, 600);
+        }
+        batch.execute();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Benchmark
+    public Object get() {
+        return redisCache.get(keys[next()]);
+    }
+
+    /**
+     * 一次MGET读取3个key, 对应注解中配置多个命名空间的情况
+     */
+    @Benchmark
+    public List<Object> multiGet() {
+        List<String> batchKeys = new ArrayList<>(3);
+        for (int i = 0; i < 3; i++) {
+            batchKeys.add(keys[next()]);
+        }
+        return redisCache.multiGet(batchKeys);
+    }
+
+    /**
+     * 管道写入value, 过期时间和命名空间登记
+     */
+    @Benchmark
+    public void set() {
+        redisCache.set(NAMESPACE, keys[next()], value, 600);
+    }
+
+    private int next() {
+        int index = cursor;
+        cursor = index + 1 == SIZE ? 0 : index + 1;
+        return index;
+    }
+}
@@ -0,0 +1,161 @@
+package cn.threeoranges.benchmark;
+
+import cn.threeoranges.cache.SimpleCache;
+import cn.threeoranges.properties.RainbowCacheProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SimpleCache读写吞吐量, 分别在1/4/16个线程和均匀/Zipfian分布下测试
+ * <p>
+ * mixed为75%读 25%写, 写入时一半带过期时间
+ *
+ * @author: 李小熊
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimpleCacheBenchmark {
+    private static final int SEQUENCE_LENGTH = 1 << 20;
+    private static final int SEQUENCE_MASK = SEQUENCE_LENGTH - 1;
+
+    /**
+     * key个数
+     */
+    @Param({"100000"})
+    private int size;
+    /**
+     * 本地缓存最大个数, -1为不限制, 小于size时会触发淘汰
+     */
+    @Param({"-1", "50000"})
+    private long maximumSize;
+    @Param({"UNIFORM", "ZIPFIAN"})
+    private KeyDistribution distribution;
+
+    private final SimpleCache simpleCache = SimpleCache.simpleCache();
+    private String[] keys;
+    private int[] sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        simpleCache.delete(new HashSet<>(simpleCache.keys()));
+        RainbowCacheProperties properties = new RainbowCacheProperties();
+        properties.setMaximumSize(maximumSize);
+        simpleCache.configure(properties);
+
+        keys = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "benchmark:user:" + i;
+            simpleCache.setCache(keys[i], "value-" + i);
+        }
+        sequence = distribution.sequence(size, SEQUENCE_LENGTH, 42L);
+    }
+
+    /**
+     * 每个线程从访问序列的不同位置开始
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index = ThreadLocalRandom.current().nextInt(SEQUENCE_LENGTH);
+
+        int next() {
+            return index++ & SEQUENCE_MASK;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object get_1(Cursor cursor) {
+        return get(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object get_4(Cursor cursor) {
+        return get(cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object get_16(Cursor cursor) {
+        return get(cursor);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void set_1(Cursor cursor) {
+        set(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void set_4(Cursor cursor) {
+        set(cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void set_16(Cursor cursor) {
+        set(cursor);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object mixed_1(Cursor cursor) {
+        return mixed(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object mixed_4(Cursor cursor) {
+        return mixed(cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object mixed_16(Cursor cursor) {
+        return mixed(cursor);
+    }
+
+    private Object get(Cursor cursor) {
+        return simpleCache.getCache(keys[sequence[cursor.next()]]);
+    }
+
+    private void set(Cursor cursor) {
+        String key = keys[sequence[cursor.next()]];
+        simpleCache.setCache(key, key);
+    }
+
+    private Object mixed(Cursor cursor) {
+        int index = cursor.next();
+        String key = keys[sequence[index]];
+        switch (index & 7) {
+            case 0:
+                simpleCache.setCache(key, key);
+                return null;
+            case 1:
+                simpleCache.setCache(key, key, 60, TimeUnit.SECONDS);
+                return null;
+            default:
+                return simpleCache.getCache(key);
+        }
+    }
+}
@@ -31,10 +31,61 @@ public @interface RainbowCache {
      */
     long expiration() default -1L;
 
+    /**
+     * 自适应有效时间的下限(秒), 冷key或加载较快的缓存最短有效时间, -1为不缩短;
+     * 与maxExpiration任一配置且expiration不小于0时开启自适应有效时间
+     *
+     * @return long
+     */
+    long minExpiration() default -1L;
+
+    /**
+     * 自适应有效时间的上限(秒), 热点key或加载较慢的缓存最长有效时间, -1为不延长
+     *
+     * @return long
+     */
+    long maxExpiration() default -1L;
+
     /**
      * 自动续约
      *
      * @return boolean
      */
     boolean renew() default false;
+
+    /**
+     * 写入多少秒后异步刷新, 刷新完成前仍返回当前值, -1为不刷新, 仅本地缓存生效
+     *
+     * @return long
+     */
+    long refreshAfter() default -1L;
+
+    /**
+     * 过期后多少秒内仍返回旧值并异步刷新, -1为不返回旧值, 仅本地缓存生效
+     *
+     * @return long
+     */
+    long staleWhileRevalidate() default -1L;
+
+    /**
+     * 业务加载失败时, 过期不超过多少秒的旧值仍可返回, -1为不返回旧值, 仅本地缓存生效
+     *
+     * @return long
+     */
+    long staleIfError() default -1L;
+
+    /**
+     * 批量模式, 格式为#参数名, 参数为集合, 每个元素单独缓存, 只用未命中的元素调用方法
+     *
+     * @return String
+     */
+    String batch() default "";
+
+    /**
+     * 批量模式下从返回的集合元素中取出对应参数元素的表达式, 以元素为根对象, 如id;
+     * 返回Map时使用Map的key, 不需要配置
+     *
+     * @return String
+     */
+    String batchKey() default "";
 }
@@ -1,5 +1,7 @@
 package cn.threeoranges.annotation;
 
+import cn.threeoranges.annotation.enums.RainbowLockModeEnum;
+
 import java.lang.annotation.*;
 
 /**
@@ -13,4 +15,11 @@ import java.lang.annotation.*;
 @Documented
 public @interface RainbowDistributedLock {
     String key() default "";
+
+    /**
+     * 加锁模式, 同一节点对同一个key竞争激烈时使用HIERARCHICAL减少redis访问
+     *
+     * @return RainbowLockModeEnum
+     */
+    RainbowLockModeEnum mode() default RainbowLockModeEnum.DISTRIBUTED;
 }
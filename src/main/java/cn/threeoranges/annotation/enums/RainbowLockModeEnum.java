@@ -0,0 +1,18 @@
+package cn.threeoranges.annotation.enums;
+
+/**
+ * 分布式锁模式
+ *
+ * @author: 李小熊
+ **/
+public enum RainbowLockModeEnum {
+    /**
+     * 每次调用都向redis加锁
+     */
+    DISTRIBUTED,
+    /**
+     * 先在本节点按key排队, 只有本地的获胜者向redis加锁;
+     * 释放时若本地还有等待者, 直接把持有中的redis锁交给下一个等待者
+     */
+    HIERARCHICAL
+}
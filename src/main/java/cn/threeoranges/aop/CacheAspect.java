@@ -4,86 +4,210 @@ import cn.threeoranges.annotation.RainbowCache;
 import cn.threeoranges.annotation.RainbowCacheClear;
 import cn.threeoranges.annotation.RainbowCachePut;
 import cn.threeoranges.annotation.RainbowDistributedLock;
+import cn.threeoranges.annotation.enums.RainbowLockModeEnum;
+import cn.threeoranges.cache.CachePlan;
+import cn.threeoranges.cache.CachePlans;
 import cn.threeoranges.cache.Cacheable;
+import cn.threeoranges.cache.HotKeyDetector;
+import cn.threeoranges.cache.ReactiveRedisCache;
+import cn.threeoranges.cache.RedisCache;
 import cn.threeoranges.cache.SimpleCache;
+import cn.threeoranges.cache.TieredCacheSynchronizer;
+import cn.threeoranges.codec.CodecRedisSerializer;
+import cn.threeoranges.codec.CompactCacheCodec;
+import cn.threeoranges.codec.RainbowCacheCodec;
+import cn.threeoranges.lock.RedisLockManager;
+import cn.threeoranges.metrics.CacheMetrics;
+import cn.threeoranges.metrics.LockStats;
 import cn.threeoranges.properties.RainbowCacheProperties;
 import cn.threeoranges.properties.enums.RainbowCacheTypeEnum;
-import cn.threeoranges.thread.pool.WatchDogThreadPool;
+import cn.threeoranges.thread.executor.RainbowExecutor;
+import cn.threeoranges.thread.executor.RainbowExecutors;
+import cn.threeoranges.thread.pool.RefreshThreadPool;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import java.lang.management.ManagementFactory;
-import java.lang.management.ThreadInfo;
-import java.lang.management.ThreadMXBean;
+import java.io.IOException;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
-import static cn.threeoranges.properties.enums.RainbowCacheTypeEnum.REDIS;
 import static cn.threeoranges.properties.enums.RainbowCacheTypeEnum.SIMPLE;
+import static cn.threeoranges.properties.enums.RainbowCacheTypeEnum.TIERED;
 
 /**
  * @author xiaoxiong
  */
 @Aspect
 public class CacheAspect {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheAspect.class);
     @Resource
     private RainbowCacheProperties rainbowCacheProperties;
-    private RainbowCacheTypeEnum type;
-    @Autowired
+    @Autowired(required = false)
     private RedisTemplate<String, Object> redisTemplate;
+    @Autowired(required = false)
+    private RainbowCacheCodec customCodec;
+    @Autowired(required = false)
+    private RainbowExecutor customExecutor;
+    /**
+     * 异步刷新和锁续期的执行器
+     */
+    private RainbowExecutor executor;
     private final Cacheable cacheable = Cacheable.cacheable();
     private final SimpleCache simpleCache = SimpleCache.simpleCache();
+    private RedisCache redisCache;
+    private ReactiveRedisCache reactiveRedisCache;
+    private TieredCacheSynchronizer synchronizer;
+    private RedisLockManager lockManager;
+    /**
+     * 每个方法的执行计划, 首次调用时创建
+     */
+    private CachePlans<RainbowCache> cachePlans;
+    private CachePlans<RainbowCachePut> putPlans;
+    private CachePlans<RainbowCacheClear> clearPlans;
+
+    /**
+     * 按配置初始化本地缓存
+     */
+    @PostConstruct
+    public void init() {
+        RainbowCacheCodec codec = RainbowCacheCodec.create(rainbowCacheProperties, customCodec);
+        if (rainbowCacheProperties.isSerializedLocal()) {
+            simpleCache.setCodec(codec == null ? new CompactCacheCodec() : codec);
+        }
+        simpleCache.configure(rainbowCacheProperties);
+        cacheable.configure(rainbowCacheProperties);
+        HotKeyDetector.detector().configure(rainbowCacheProperties);
+        executor = customExecutor != null ? customExecutor : RainbowExecutors.create(rainbowCacheProperties);
+        RefreshThreadPool.getInstance().setExecutor(executor);
+        cacheable.setExecutor(executor);
+        if (redisTemplate != null) {
+            redisCache = new RedisCache(codec == null ? redisTemplate : codecTemplate(codec));
+            reactiveRedisCache = ReactiveRedisCache.create(redisCache.getRedisTemplate());
+            lockManager = new RedisLockManager(redisTemplate);
+            lockManager.setExecutor(executor);
+            cacheable.setLockManager(lockManager);
+        }
+        if (TIERED.equals(rainbowCacheProperties.getType()) && redisTemplate != null) {
+            synchronizer = new TieredCacheSynchronizer(redisTemplate);
+            synchronizer.start();
+        }
+        // 配置文件中选择本地缓存 或者 redis无法连接时使用本地缓存
+        RainbowCacheTypeEnum type = redisTemplate == null || rainbowCacheProperties.getType() == null
+                ? SIMPLE : rainbowCacheProperties.getType();
+        boolean hashTag = rainbowCacheProperties.isHashTag();
+        cachePlans = new CachePlans<>(RainbowCache.class, (rainbowCache, signature) ->
+                CachePlan.of(rainbowCache, signature, type, hashTag));
+        putPlans = new CachePlans<>(RainbowCachePut.class, (rainbowCachePut, signature) ->
+                CachePlan.of(rainbowCachePut, signature, hashTag));
+        clearPlans = new CachePlans<>(RainbowCacheClear.class, (rainbowCacheClear, signature) ->
+                CachePlan.of(rainbowCacheClear, signature, hashTag));
+    }
+
+    /**
+     * 使用指定序列化方式的RedisTemplate, 与业务中的RedisTemplate共用连接
+     *
+     * @param codec codec
+     * @return redisTemplate
+     */
+    private RedisTemplate<String, Object> codecTemplate(RainbowCacheCodec codec) {
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(redisTemplate.getConnectionFactory());
+        template.setKeySerializer(RedisSerializer.string());
+        template.setHashKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(new CodecRedisSerializer(codec));
+        template.setHashValueSerializer(new CodecRedisSerializer(codec));
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    @PreDestroy
+    public void destroy() throws Exception {
+        // 关闭前写入本地缓存快照, 下次启动时恢复; 写入失败不影响后续关闭
+        try {
+            simpleCache.saveSnapshot();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("本地缓存快照写入失败", e);
+        }
+        try {
+            if (synchronizer != null) {
+                synchronizer.stop();
+            }
+        } finally {
+            try {
+                // 停止锁续期, 避免关闭后仍持有分布式锁
+                if (lockManager != null) {
+                    lockManager.stop();
+                }
+            } finally {
+                // 自定义执行器由容器管理
+                if (customExecutor == null && executor != null) {
+                    executor.shutdown();
+                }
+            }
+        }
+    }
 
     /**
      * 缓存数据
      *
-     * @param pjp          pjp
-     * @param rainbowCache rainbowCache
+     * @param pjp pjp
      * @return result
      * @throws Throwable throwable
      */
-    @Around("@annotation(rainbowCache)")
-    public Object cache(ProceedingJoinPoint pjp, RainbowCache rainbowCache) throws Throwable {
-        Object obj = null;
-        type = rainbowCacheProperties.getType();
-
-        // 配置文件中选择本地缓存 或者 redis无法连接
-        // 使用本地缓存
-        if (SIMPLE.equals(type) || redisTemplate == null) {
-            obj = cacheable.localCache(pjp, rainbowCache);
+    @Around("@annotation(cn.threeoranges.annotation.RainbowCache)")
+    public Object cache(ProceedingJoinPoint pjp) throws Throwable {
+        CachePlan<RainbowCache> plan = cachePlans.get(pjp);
+        // 异步返回值缓存完成后的结果
+        if (plan.isAsync()) {
+            return cacheable.asyncCache(pjp, plan, redisCache, reactiveRedisCache);
         }
-
-        // 使用redis缓存
-        if (REDIS.equals(type) && redisTemplate != null) {
-            obj = cacheable.redisCache(pjp, rainbowCache, redisTemplate);
+        // 集合参数的每个元素单独缓存
+        if (plan.isBatch()) {
+            return cacheable.batchCache(pjp, plan, redisCache);
+        }
+        switch (plan.getEngine()) {
+            // 使用redis缓存
+            case REDIS:
+                return cacheable.redisCache(pjp, plan, redisCache);
+            // 使用本地一级缓存 + redis二级缓存
+            case TIERED:
+                return cacheable.tieredCache(pjp, plan, redisCache);
+            // 使用本地缓存
+            default:
+                return cacheable.localCache(pjp, plan);
         }
-        return obj;
     }
 
     /**
      * 清除缓存
      *
-     * @param rainbowCacheClear rainbowCacheClear
+     * @param pjp pjp
+     * @return result
+     * @throws Throwable throwable
      */
-    @Around("@annotation(rainbowCacheClear)")
-    public Object cacheClear(ProceedingJoinPoint pjp, RainbowCacheClear rainbowCacheClear) throws Throwable {
-        String dynamicKey = Cacheable.getValue(pjp, rainbowCacheClear.dynamicKey());
-        for (String value : rainbowCacheClear.keys()) {
-            if (!"".equals(dynamicKey)) {
-                value += ":" + dynamicKey;
+    @Around("@annotation(cn.threeoranges.annotation.RainbowCacheClear)")
+    public Object cacheClear(ProceedingJoinPoint pjp) throws Throwable {
+        CachePlan<RainbowCacheClear> plan = clearPlans.get(pjp);
+        String dynamicKey = plan.dynamicKey(pjp.getArgs());
+        for (int i = 0; i < plan.size(); i++) {
+            String value = plan.key(i, dynamicKey);
+            // 处理Redis, 只清理命名空间中登记过的key
+            if (redisCache != null) {
+                redisCache.clear(plan.getNamespace(i), value);
             }
-            // 处理Redis
-            if (REDIS.equals(type) || redisTemplate != null) {
-                Set<String> keys = redisTemplate.keys(value);
-                if (keys == null || keys.size() == 0) {
-                    continue;
-                }
-                redisTemplate.delete(keys);
+            // 通知其他节点清理本地一级缓存
+            if (synchronizer != null) {
+                synchronizer.publishClear(value);
             }
             // 处理本地缓存
             Set<String> keys = simpleCache.keys(value);
@@ -98,103 +222,87 @@ public class CacheAspect {
     /**
      * 放置缓存
      *
-     * @param pjp             pjp
-     * @param rainbowCachePut rainbowCachePut
+     * @param pjp pjp
      * @return object
      * @throws Throwable throwable
      */
-    @Around("@annotation(rainbowCachePut)")
-    public Object cachePut(ProceedingJoinPoint pjp, RainbowCachePut rainbowCachePut) throws Throwable {
+    @Around("@annotation(cn.threeoranges.annotation.RainbowCachePut)")
+    public Object cachePut(ProceedingJoinPoint pjp) throws Throwable {
         Object obj = pjp.proceed();
-        long expiration = rainbowCachePut.expiration();
+        if (obj == null) {
+            return null;
+        }
+        CachePlan<RainbowCachePut> plan = putPlans.get(pjp);
+        List<String> keys = plan.keys(plan.dynamicKey(pjp.getArgs()));
+        // 异步返回值在完成后放置
+        return cacheable.whenComplete(plan, obj, value -> put(plan, keys, value));
+    }
 
-        for (String key : rainbowCachePut.keys()) {
-            if (obj != null) {
-                // 不带失效时间的缓存
-                if (expiration < 0) {
-                    simpleCache.setCache(key, obj);
-                    if (redisTemplate != null) {
-                        redisTemplate.opsForValue().set(key, obj);
-                    }
-                    continue;
-                }
-                // 带有失效时间的缓存
-                simpleCache.setCache(key, obj, expiration, TimeUnit.SECONDS);
-                if (redisTemplate != null) {
-                    redisTemplate.opsForValue().set(key, obj, expiration, TimeUnit.MILLISECONDS);
-                }
+    private void put(CachePlan<RainbowCachePut> plan, List<String> keys, Object obj) {
+        long expiration = plan.getExpiration();
+        RedisCache.Batch batch = redisCache == null ? null : redisCache.batch();
+        for (int i = 0; i < keys.size(); i++) {
+            // 真正存放缓存的key
+            String key = keys.get(i);
+            if (batch != null) {
+                batch.set(plan.getNamespace(i), key, obj, expiration);
+            }
+            // 本地一级缓存只保留较短时间
+            if (synchronizer != null) {
+                cacheable.setLocal(key, obj, expiration);
+                continue;
+            }
+            // 不带失效时间的缓存
+            if (expiration < 0) {
+                simpleCache.setCache(key, obj);
+                continue;
+            }
+            // 带有失效时间的缓存
+            simpleCache.setCache(key, obj, plan.getExpirationNanos(), TimeUnit.NANOSECONDS);
+        }
+        if (batch != null) {
+            batch.execute();
+        }
+        // 通知其他节点删除旧值
+        if (synchronizer != null) {
+            for (String key : keys) {
+                synchronizer.publishEvict(key);
             }
         }
-        return obj;
     }
 
     /**
      * 分布式锁
      *
-     * @param pjp
-     * @param distributedLock
-     * @return
-     * @throws Throwable
+     * @param pjp             pjp
+     * @param distributedLock distributedLock
+     * @return result
+     * @throws Throwable throwable
      */
     @Around("@annotation(distributedLock)")
     public Object distributedLock(ProceedingJoinPoint pjp, RainbowDistributedLock distributedLock) throws Throwable {
+        if (lockManager == null) {
+            throw new IllegalStateException("RedisTemplate is required for @RainbowDistributedLock");
+        }
         String lockKey = "rainbowDistributedLock:" + distributedLock.key();
-        String lockValue = "lock";
         long lockTime = 5;
-        Boolean success = redisTemplate.opsForValue().setIfAbsent(lockKey, lockValue, lockTime, TimeUnit.SECONDS);
-        if (success == null) {
-            throw new RuntimeException("lock error");
-        }
-
-        long startTime = System.currentTimeMillis();
-        long timeOut = rainbowCacheProperties.getTimeOut();
+        LockStats lockStats = CacheMetrics.metrics().lock(distributedLock.key());
+        boolean hierarchical = RainbowLockModeEnum.HIERARCHICAL.equals(distributedLock.mode());
+        String token = hierarchical
+                ? lockManager.lockHierarchical(lockKey, TimeUnit.SECONDS.toMillis(lockTime),
+                rainbowCacheProperties.getTimeOut(), lockStats)
+                : lockManager.lock(lockKey, TimeUnit.SECONDS.toMillis(lockTime),
+                rainbowCacheProperties.getTimeOut(), lockStats);
 
-        while (!success) {
-            TimeUnit.SECONDS.sleep(1);
-            success = redisTemplate.opsForValue().setIfAbsent(lockKey, lockValue, lockTime, TimeUnit.SECONDS);
-            if (success == null) {
-                throw new RuntimeException("lock error");
-            }
-            if (timeOut != -1 && System.currentTimeMillis() - startTime > timeOut) {
-                throw new TimeoutException("The lock acquisition time is too long for more than " + timeOut + " seconds");
+        // 持有期间由lockManager自动续期
+        try {
+            return pjp.proceed();
+        } finally {
+            if (hierarchical) {
+                lockManager.unlockHierarchical(lockKey, token);
+            } else {
+                lockManager.unlock(lockKey, token);
             }
         }
-
-        // 开启看门狗
-        watchDog(lockKey, lockValue, lockTime);
-
-        return pjp.proceed();
-    }
-
-    /**
-     * 看门狗
-     *
-     * @param lockKey   lockKey
-     * @param lockValue lockValue
-     * @param lockTime  lockTime
-     */
-    public void watchDog(String lockKey, String lockValue, Long lockTime) {
-        long threadId = Thread.currentThread().getId();
-
-        // 自动续期
-        Runnable runnable = () -> {
-            ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
-            ThreadInfo info = mxBean.getThreadInfo(threadId);
-
-            while (info != null) {
-                redisTemplate.opsForValue().setIfAbsent(lockKey, lockValue, lockTime, TimeUnit.SECONDS);
-                try {
-                    TimeUnit.SECONDS.sleep(1);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException("线程异常, 线程id: " + Thread.currentThread().getId() + "{}", e);
-                }
-                info = mxBean.getThreadInfo(threadId);
-            }
-
-            redisTemplate.delete(lockKey);
-        };
-
-        WatchDogThreadPool.getInstance().execute(runnable);
     }
 }
-
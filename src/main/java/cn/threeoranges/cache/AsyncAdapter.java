@@ -0,0 +1,63 @@
+package cn.threeoranges.cache;
+
+import org.springframework.util.ClassUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 异步返回值适配, 缓存的是异步结果完成后的值而不是Future/Publisher本身
+ * <p>
+ * 支持CompletableFuture/CompletionStage, 类路径中存在Reactor时支持Mono和Flux(缓存收集后的List).
+ *
+ * @author: 李小熊
+ **/
+interface AsyncAdapter {
+    boolean REACTOR_PRESENT = ClassUtils.isPresent("reactor.core.publisher.Mono", AsyncAdapter.class.getClassLoader());
+
+    /**
+     * 根据方法返回值类型获取适配器
+     *
+     * @param returnType 方法返回值类型
+     * @return 同步方法返回null
+     */
+    static AsyncAdapter forType(Class<?> returnType) {
+        AsyncAdapter adapter = FutureAdapter.forType(returnType);
+        if (adapter == null && REACTOR_PRESENT) {
+            adapter = ReactorAdapter.forType(returnType);
+        }
+        return adapter;
+    }
+
+    /**
+     * 订阅业务返回值, 完成时得到需要缓存的值
+     *
+     * @param result 业务返回值
+     * @return future, 结果为空时完成值为null
+     */
+    CompletableFuture<Object> toFuture(Object result);
+
+    /**
+     * 将共享的加载结果包装成方法的返回值类型
+     *
+     * @param future future
+     * @return 方法返回值
+     */
+    Object fromFuture(CompletableFuture<Object> future);
+
+    /**
+     * 将缓存的值包装成方法的返回值类型
+     *
+     * @param value 缓存的值
+     * @return 方法返回值
+     */
+    Object fromValue(Object value);
+
+    /**
+     * 延迟执行缓存查询, Mono/Flux在订阅时才查询, Future立即查询
+     *
+     * @param supplier 缓存查询
+     * @return 方法返回值
+     */
+    Object defer(Supplier<Object> supplier);
+}
@@ -0,0 +1,184 @@
+package cn.threeoranges.cache;
+
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.SimpleEvaluationContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 批量模式的执行计划
+ * <p>
+ * 集合参数的每个元素对应一个缓存, 调用方法时只传入未命中的元素, 返回值按元素拆分后分别缓存,
+ * 最后按参数顺序合并命中和加载的结果. 返回List/Collection/Set时通过batchKey从元素中取出对应的参数元素,
+ * 返回Map时使用Map的key.
+ *
+ * @author: 李小熊
+ **/
+final class BatchPlan {
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser();
+    private static final EvaluationContext CONTEXT = SimpleEvaluationContext.forReadOnlyDataBinding().build();
+
+    /**
+     * 集合参数下标
+     */
+    private final int index;
+    /**
+     * 集合参数是否为Set
+     */
+    private final boolean setArgument;
+    /**
+     * 返回值是否为Map
+     */
+    private final boolean mapResult;
+    /**
+     * 返回值是否为Set
+     */
+    private final boolean setResult;
+    private final Expression keyExpression;
+
+    private BatchPlan(int index, boolean setArgument, boolean mapResult, boolean setResult, Expression keyExpression) {
+        this.index = index;
+        this.setArgument = setArgument;
+        this.mapResult = mapResult;
+        this.setResult = setResult;
+        this.keyExpression = keyExpression;
+    }
+
+    /**
+     * 解析批量配置
+     *
+     * @param signature signature
+     * @param batch     集合参数, #参数名
+     * @param batchKey  从返回元素中取出参数元素的表达式
+     * @return plan
+     */
+    static BatchPlan of(MethodSignature signature, String batch, String batchKey) {
+        String name = batch.startsWith("#") ? batch.substring(1) : batch;
+        String[] paramNames = signature.getParameterNames();
+        Class<?>[] paramTypes = signature.getParameterTypes();
+        int index = -1;
+        for (int i = 0; paramNames != null && i < paramNames.length; i++) {
+            if (name.equals(paramNames[i])) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0 || !Collection.class.isAssignableFrom(paramTypes[index])) {
+            throw new IllegalStateException("Batch parameter " + batch + " is not a collection parameter of "
+                    + signature.getMethod());
+        }
+        Class<?> paramType = paramTypes[index];
+        boolean setArgument = Set.class.isAssignableFrom(paramType);
+        if (!paramType.isAssignableFrom(setArgument ? LinkedHashSet.class : ArrayList.class)) {
+            throw new IllegalStateException("Unsupported batch parameter type " + paramType.getName());
+        }
+
+        Class<?> returnType = signature.getReturnType();
+        boolean mapResult = returnType.isAssignableFrom(LinkedHashMap.class) && Map.class.isAssignableFrom(returnType);
+        boolean setResult = returnType.isAssignableFrom(LinkedHashSet.class) && Set.class.isAssignableFrom(returnType);
+        boolean listResult = returnType.isAssignableFrom(ArrayList.class) && Collection.class.isAssignableFrom(returnType);
+        if (!mapResult && !setResult && !listResult) {
+            throw new IllegalStateException("Unsupported batch return type " + returnType.getName());
+        }
+        if (!mapResult && (batchKey == null || batchKey.isEmpty())) {
+            throw new IllegalStateException("batchKey is required when batch method returns a collection: "
+                    + signature.getMethod());
+        }
+        Expression keyExpression = mapResult ? null : PARSER.parseExpression(batchKey);
+        return new BatchPlan(index, setArgument, mapResult, setResult, keyExpression);
+    }
+
+    /**
+     * 参数元素, 去重并保持顺序
+     *
+     * @param args 方法参数
+     * @return 参数元素, 参数为null时返回null
+     */
+    List<Object> ids(Object[] args) {
+        Collection<?> ids = (Collection<?>) args[index];
+        return ids == null ? null : new ArrayList<>(new LinkedHashSet<>(ids));
+    }
+
+    /**
+     * 替换集合参数
+     *
+     * @param args 方法参数
+     * @param ids  未命中的参数元素
+     * @return 新的方法参数
+     */
+    Object[] withIds(Object[] args, List<Object> ids) {
+        Object[] newArgs = args.clone();
+        newArgs[index] = setArgument ? new LinkedHashSet<>(ids) : ids;
+        return newArgs;
+    }
+
+    /**
+     * 按参数元素拆分返回值
+     *
+     * @param result 返回值
+     * @return 参数元素(字符串) -> 返回元素
+     */
+    Map<String, Object> split(Object result) {
+        if (result == null) {
+            return new HashMap<>(0);
+        }
+        if (mapResult) {
+            Map<?, ?> map = (Map<?, ?>) result;
+            Map<String, Object> values = new HashMap<>(map.size() * 2);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    values.put(entry.getKey().toString(), entry.getValue());
+                }
+            }
+            return values;
+        }
+        Collection<?> collection = (Collection<?>) result;
+        Map<String, Object> values = new HashMap<>(collection.size() * 2);
+        for (Object element : collection) {
+            if (element == null) {
+                continue;
+            }
+            Object id = keyExpression.getValue(CONTEXT, element);
+            if (id != null) {
+                values.put(id.toString(), element);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 按参数顺序合并结果, 没有结果的参数元素不出现在返回值中
+     *
+     * @param ids    参数元素
+     * @param values 与ids顺序一致的结果
+     * @return 方法返回值
+     */
+    Object merge(List<Object> ids, Object[] values) {
+        if (mapResult) {
+            Map<Object, Object> result = new LinkedHashMap<>(ids.size() * 2);
+            for (int i = 0; i < ids.size(); i++) {
+                if (values[i] != null) {
+                    result.put(ids.get(i), values[i]);
+                }
+            }
+            return result;
+        }
+        Collection<Object> result = setResult ? new LinkedHashSet<>(ids.size() * 2) : new ArrayList<>(ids.size());
+        for (Object value : values) {
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,375 @@
+package cn.threeoranges.cache;
+
+import cn.threeoranges.annotation.RainbowCache;
+import cn.threeoranges.annotation.RainbowCacheClear;
+import cn.threeoranges.annotation.RainbowCachePut;
+import cn.threeoranges.metrics.CacheMetrics;
+import cn.threeoranges.metrics.CacheStats;
+import cn.threeoranges.metrics.Latency;
+import cn.threeoranges.properties.enums.RainbowCacheTypeEnum;
+import org.aspectj.lang.reflect.MethodSignature;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 方法的缓存执行计划, 每个方法只创建一次
+ * <p>
+ * 保存解析好的注解、缓存引擎、带分隔符的key前缀、纳秒有效时间、动态键表达式和统计,
+ * 调用时只需计算动态键并拼接一次key.
+ *
+ * @author: 李小熊
+ **/
+public final class CachePlan<A extends Annotation> {
+    private final A annotation;
+    private final RainbowCacheTypeEnum engine;
+    /**
+     * 存放缓存使用的命名空间, 开启hash tag时为{namespace}
+     */
+    private final String[] namespaces;
+    /**
+     * namespace + ":"
+     */
+    private final String[] keyPrefixes;
+    /**
+     * 没有动态键时使用的key
+     */
+    private final List<String> staticKeys;
+    private final KeyExpressionEvaluator.KeyExpression keyExpression;
+    private final long expiration;
+    private final long expirationNanos;
+    private final boolean renew;
+    private final CacheStats[] localStats;
+    private final CacheStats[] redisStats;
+    /**
+     * 异步返回值适配, 同步方法为null
+     */
+    private final AsyncAdapter asyncAdapter;
+    /**
+     * 批量模式, 未开启时为null
+     */
+    private BatchPlan batch;
+    /**
+     * 异步刷新和返回旧值的时间(毫秒), 小于等于0为不开启
+     */
+    private long refreshAfterMillis = -1L;
+    private long staleWhileRevalidateMillis = -1L;
+    private long staleIfErrorMillis = -1L;
+    /**
+     * 自适应有效时间的上下限(纳秒), 未开启时为-1
+     */
+    private long minExpirationNanos = -1L;
+    private long maxExpirationNanos = -1L;
+
+    private CachePlan(A annotation, MethodSignature signature, String[] namespaces, String dynamicKey,
+                      long expiration, boolean renew, RainbowCacheTypeEnum engine, boolean hashTag) {
+        this.annotation = annotation;
+        this.engine = engine;
+        this.namespaces = new String[namespaces.length];
+        this.keyPrefixes = new String[namespaces.length];
+        this.localStats = new CacheStats[namespaces.length];
+        this.redisStats = new CacheStats[namespaces.length];
+        CacheMetrics metrics = CacheMetrics.metrics();
+        // 只登记实际使用的缓存级别, TIERED同时使用本地和redis; put/clear的执行计划不记录统计
+        boolean local = engine == RainbowCacheTypeEnum.SIMPLE || engine == RainbowCacheTypeEnum.TIERED;
+        boolean redis = engine == RainbowCacheTypeEnum.REDIS || engine == RainbowCacheTypeEnum.TIERED;
+        for (int i = 0; i < namespaces.length; i++) {
+            // 同一个命名空间的key落在redis集群的同一个slot
+            this.namespaces[i] = hashTag ? "{" + namespaces[i] + "}" : namespaces[i];
+            keyPrefixes[i] = this.namespaces[i] + ":";
+            localStats[i] = local ? metrics.stats(RainbowCacheTypeEnum.SIMPLE, namespaces[i]) : null;
+            redisStats[i] = redis ? metrics.stats(RainbowCacheTypeEnum.REDIS, namespaces[i]) : null;
+        }
+        this.staticKeys = Collections.unmodifiableList(Arrays.asList(this.namespaces));
+        this.keyExpression = dynamicKey == null || "".equals(dynamicKey)
+                ? null : KeyExpressionEvaluator.evaluator().getExpression(signature, dynamicKey);
+        this.expiration = expiration;
+        this.expirationNanos = expiration < 0 ? -1L : TimeUnit.SECONDS.toNanos(expiration);
+        this.renew = renew;
+        this.asyncAdapter = AsyncAdapter.forType(signature.getReturnType());
+    }
+
+    /**
+     * 创建@RainbowCache的执行计划
+     *
+     * @param rainbowCache rainbowCache
+     * @param signature    signature
+     * @param engine       缓存引擎
+     * @param hashTag      命名空间是否使用hash tag
+     * @return plan
+     */
+    public static CachePlan<RainbowCache> of(RainbowCache rainbowCache, MethodSignature signature,
+                                             RainbowCacheTypeEnum engine, boolean hashTag) {
+        CachePlan<RainbowCache> plan = new CachePlan<>(rainbowCache, signature, rainbowCache.keys(),
+                rainbowCache.dynamicKey(), rainbowCache.expiration(), rainbowCache.renew(), engine, hashTag);
+        plan.refreshAfterMillis = toMillis(rainbowCache.refreshAfter());
+        plan.staleWhileRevalidateMillis = toMillis(rainbowCache.staleWhileRevalidate());
+        plan.staleIfErrorMillis = toMillis(rainbowCache.staleIfError());
+        long expiration = rainbowCache.expiration();
+        if (expiration >= 0 && (rainbowCache.minExpiration() >= 0 || rainbowCache.maxExpiration() >= 0)) {
+            long min = rainbowCache.minExpiration() >= 0 ? Math.min(rainbowCache.minExpiration(), expiration) : expiration;
+            plan.minExpirationNanos = TimeUnit.SECONDS.toNanos(min);
+            plan.maxExpirationNanos = TimeUnit.SECONDS.toNanos(Math.max(rainbowCache.maxExpiration(), expiration));
+        }
+        if (!"".equals(rainbowCache.batch())) {
+            if (plan.isAsync()) {
+                throw new IllegalStateException("Batch mode does not support async return type: " + signature.getMethod());
+            }
+            plan.batch = BatchPlan.of(signature, rainbowCache.batch(), rainbowCache.batchKey());
+        }
+        return plan;
+    }
+
+    /**
+     * 创建@RainbowCachePut的执行计划
+     *
+     * @param rainbowCachePut rainbowCachePut
+     * @param signature       signature
+     * @param hashTag         命名空间是否使用hash tag
+     * @return plan
+     */
+    public static CachePlan<RainbowCachePut> of(RainbowCachePut rainbowCachePut, MethodSignature signature,
+                                                boolean hashTag) {
+        return new CachePlan<>(rainbowCachePut, signature, rainbowCachePut.keys(), rainbowCachePut.dynamicKey(),
+                rainbowCachePut.expiration(), rainbowCachePut.renew(), null, hashTag);
+    }
+
+    /**
+     * 创建@RainbowCacheClear的执行计划
+     *
+     * @param rainbowCacheClear rainbowCacheClear
+     * @param signature         signature
+     * @param hashTag           命名空间是否使用hash tag
+     * @return plan
+     */
+    public static CachePlan<RainbowCacheClear> of(RainbowCacheClear rainbowCacheClear, MethodSignature signature,
+                                                  boolean hashTag) {
+        return new CachePlan<>(rainbowCacheClear, signature, rainbowCacheClear.keys(), rainbowCacheClear.dynamicKey(),
+                -1L, false, null, hashTag);
+    }
+
+    private static long toMillis(long seconds) {
+        return seconds > 0 ? TimeUnit.SECONDS.toMillis(seconds) : -1L;
+    }
+
+    public A getAnnotation() {
+        return annotation;
+    }
+
+    public RainbowCacheTypeEnum getEngine() {
+        return engine;
+    }
+
+    public int size() {
+        return namespaces.length;
+    }
+
+    public String getNamespace(int index) {
+        return namespaces[index];
+    }
+
+    public String[] getNamespaces() {
+        return namespaces;
+    }
+
+    /**
+     * 有效时间(秒), 小于0为永久有效
+     *
+     * @return expiration
+     */
+    public long getExpiration() {
+        return expiration;
+    }
+
+    /**
+     * 有效时间(纳秒), 小于0为永久有效
+     *
+     * @return expiration
+     */
+    public long getExpirationNanos() {
+        return expirationNanos;
+    }
+
+    /**
+     * 是否开启自适应有效时间
+     *
+     * @return adaptive
+     */
+    public boolean isAdaptive() {
+        return maxExpirationNanos >= 0;
+    }
+
+    /**
+     * 按访问频率和加载耗时调整后的有效时间(纳秒), 未开启自适应时返回固定有效时间
+     * <p>
+     * 加载比命名空间平均耗时慢的缓存按耗时之比延长, 最多2倍; 热点key再乘2, 多次加载仍未被抽样到的冷key乘1/2,
+     * 结果限制在[minExpiration, maxExpiration].
+     *
+     * @param key       key
+     * @param loadNanos 本次加载耗时(纳秒), 小于0为未加载(续期、补齐)
+     * @return expiration
+     */
+    public long getExpirationNanos(String key, long loadNanos) {
+        if (!isAdaptive()) {
+            return expirationNanos;
+        }
+        double factor = 1d;
+        Latency latency = (engine == RainbowCacheTypeEnum.SIMPLE ? localStats[0] : redisStats[0]).getLoadLatency();
+        long count = latency.getCount();
+        if (loadNanos >= 0 && count > 0) {
+            double average = latency.getTotalTime(TimeUnit.NANOSECONDS) / count;
+            if (average > 0) {
+                factor = Math.max(1d, Math.min(2d, loadNanos / average));
+            }
+        }
+        int temperature = HotKeyDetector.detector().temperature(key);
+        if (temperature == HotKeyDetector.HOT) {
+            factor *= 2d;
+        } else if (temperature == HotKeyDetector.COLD) {
+            factor *= 0.5d;
+        }
+        long nanos = (long) (expirationNanos * factor);
+        return Math.max(minExpirationNanos, Math.min(maxExpirationNanos, nanos));
+    }
+
+    /**
+     * 按访问频率和加载耗时调整后的有效时间(秒), 向上取整
+     *
+     * @param key       key
+     * @param loadNanos 本次加载耗时(纳秒), 小于0为未加载
+     * @return expiration
+     */
+    public long getExpiration(String key, long loadNanos) {
+        if (!isAdaptive()) {
+            return expiration;
+        }
+        long nanos = getExpirationNanos(key, loadNanos);
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+        return TimeUnit.SECONDS.toNanos(seconds) < nanos ? seconds + 1 : seconds;
+    }
+
+    /**
+     * 方法是否返回CompletableFuture/CompletionStage/Mono/Flux
+     *
+     * @return async
+     */
+    public boolean isAsync() {
+        return asyncAdapter != null;
+    }
+
+    AsyncAdapter getAsyncAdapter() {
+        return asyncAdapter;
+    }
+
+    /**
+     * 是否为批量模式
+     *
+     * @return batch
+     */
+    public boolean isBatch() {
+        return batch != null;
+    }
+
+    BatchPlan getBatch() {
+        return batch;
+    }
+
+    public boolean isRenew() {
+        return renew;
+    }
+
+    /**
+     * 是否开启异步刷新或返回旧值
+     *
+     * @return refreshable
+     */
+    public boolean isRefreshable() {
+        return refreshAfterMillis > 0 || staleWhileRevalidateMillis > 0 || staleIfErrorMillis > 0;
+    }
+
+    public long getRefreshAfterMillis() {
+        return refreshAfterMillis;
+    }
+
+    public long getStaleWhileRevalidateMillis() {
+        return staleWhileRevalidateMillis;
+    }
+
+    public long getStaleIfErrorMillis() {
+        return staleIfErrorMillis;
+    }
+
+    /**
+     * 本地缓存统计, 引擎为REDIS或put/clear的执行计划时为null
+     *
+     * @param index 命名空间下标
+     * @return stats
+     */
+    public CacheStats getLocalStats(int index) {
+        return localStats[index];
+    }
+
+    /**
+     * redis缓存统计, 引擎为SIMPLE或put/clear的执行计划时为null
+     *
+     * @param index 命名空间下标
+     * @return stats
+     */
+    public CacheStats getRedisStats(int index) {
+        return redisStats[index];
+    }
+
+    /**
+     * 计算动态键
+     *
+     * @param args 方法参数
+     * @return 动态键, 没有配置时返回空字符串
+     */
+    public String dynamicKey(Object[] args) {
+        return keyExpression == null ? "" : keyExpression.getValue(args);
+    }
+
+    /**
+     * 真正存放缓存的key
+     *
+     * @param index      命名空间下标
+     * @param dynamicKey 动态键
+     * @return key
+     */
+    public String key(int index, String dynamicKey) {
+        return dynamicKey.isEmpty() ? namespaces[index] : keyPrefixes[index].concat(dynamicKey);
+    }
+
+    /**
+     * 批量模式下参数元素对应的动态键
+     *
+     * @param dynamicKey 动态键
+     * @param id         参数元素
+     * @return 动态键
+     */
+    public String elementKey(String dynamicKey, Object id) {
+        String idKey = String.valueOf(id);
+        return dynamicKey.isEmpty() ? idKey : dynamicKey.concat(":").concat(idKey);
+    }
+
+    /**
+     * 所有命名空间对应的key
+     *
+     * @param dynamicKey 动态键
+     * @return keys
+     */
+    public List<String> keys(String dynamicKey) {
+        if (dynamicKey.isEmpty()) {
+            return staticKeys;
+        }
+        List<String> keys = new ArrayList<>(namespaces.length);
+        for (String keyPrefix : keyPrefixes) {
+            keys.add(keyPrefix.concat(dynamicKey));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,77 @@
+package cn.threeoranges.cache;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按目标类和方法缓存执行计划
+ * <p>
+ * 切点不绑定注解参数(绑定时AspectJ每次调用都会反射查找注解), 注解在创建计划时查找一次.
+ *
+ * @author: 李小熊
+ **/
+public final class CachePlans<A extends Annotation> {
+    private final Class<A> annotationType;
+    private final Factory<A> factory;
+    private final ClassValue<ConcurrentMap<Method, CachePlan<A>>> plans = new ClassValue<ConcurrentMap<Method, CachePlan<A>>>() {
+        @Override
+        protected ConcurrentMap<Method, CachePlan<A>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>(8);
+        }
+    };
+
+    public CachePlans(Class<A> annotationType, Factory<A> factory) {
+        this.annotationType = annotationType;
+        this.factory = factory;
+    }
+
+    /**
+     * 获取执行计划
+     *
+     * @param pjp pjp
+     * @return plan
+     */
+    public CachePlan<A> get(ProceedingJoinPoint pjp) {
+        MethodSignature signature = (MethodSignature) pjp.getSignature();
+        Object target = pjp.getTarget();
+        Class<?> targetClass = target == null ? signature.getDeclaringType() : target.getClass();
+        ConcurrentMap<Method, CachePlan<A>> methodPlans = plans.get(targetClass);
+        Method method = signature.getMethod();
+        CachePlan<A> plan = methodPlans.get(method);
+        if (plan == null) {
+            plan = methodPlans.computeIfAbsent(method, m -> create(signature, m, targetClass));
+        }
+        return plan;
+    }
+
+    private CachePlan<A> create(MethodSignature signature, Method method, Class<?> targetClass) {
+        Method specificMethod = AopUtils.getMostSpecificMethod(method, targetClass);
+        A annotation = AnnotatedElementUtils.findMergedAnnotation(specificMethod, annotationType);
+        if (annotation == null) {
+            annotation = AnnotatedElementUtils.findMergedAnnotation(method, annotationType);
+        }
+        if (annotation == null) {
+            throw new IllegalStateException("@" + annotationType.getSimpleName() + " not found on " + method);
+        }
+        return factory.create(annotation, signature);
+    }
+
+    @FunctionalInterface
+    public interface Factory<A extends Annotation> {
+        /**
+         * 创建执行计划
+         *
+         * @param annotation annotation
+         * @param signature  signature
+         * @return plan
+         */
+        CachePlan<A> create(A annotation, MethodSignature signature);
+    }
+}
@@ -0,0 +1,159 @@
+package cn.threeoranges.cache;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 本地缓存分段, 按key的hash划分, 每段独立维护过期时间轮和淘汰策略
+ * <p>
+ * 读取只把key放入本段的环形读缓冲区, 不加锁; 缓冲区过半时由当前线程tryLock批量回放到淘汰策略,
+ * 锁被占用或缓冲区已满时丢弃本次记录(频率统计允许少量丢失). 写入和删除需要立即淘汰, 持有本段锁处理,
+ * 并先回放缓冲区中的读取, 不同分段之间互不阻塞.
+ * 写入和删除在map中完成后才更新淘汰策略, 持锁时按map中的当前缓存校正, 避免并发的写入和删除乱序后留下不存在的key.
+ *
+ * @author: 李小熊
+ **/
+final class CacheSegment {
+    private static final int READ_BUFFER_SIZE = 64;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TimerWheel timerWheel;
+    /**
+     * 容量淘汰策略, 未配置容量上限时为null, 只在持有lock时访问
+     */
+    private final TinyLfuPolicy policy;
+    /**
+     * 读取map中的当前缓存
+     */
+    private final Function<String, ValueObject> lookup;
+    private final AtomicReferenceArray<String> readBuffer;
+    private final AtomicLong readTail;
+    /**
+     * 只在持有lock时更新
+     */
+    private volatile long readHead;
+
+    CacheSegment(TimerWheel.Expirer expirer, TinyLfuPolicy policy, Function<String, ValueObject> lookup, long now) {
+        this.timerWheel = new TimerWheel(expirer, now);
+        this.policy = policy;
+        this.lookup = lookup;
+        this.readBuffer = policy == null ? null : new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        this.readTail = policy == null ? null : new AtomicLong();
+    }
+
+    /**
+     * 登记过期时间
+     *
+     * @param key         key
+     * @param destroyTime 过期时间点
+     */
+    void schedule(String key, long destroyTime) {
+        timerWheel.schedule(key, destroyTime);
+    }
+
+    /**
+     * 处理到期的缓存
+     *
+     * @param now 当前时间
+     */
+    void advance(long now) {
+        timerWheel.advance(now);
+    }
+
+    /**
+     * 记录读取, 不阻塞
+     *
+     * @param key key
+     */
+    void recordRead(String key) {
+        if (policy == null) {
+            return;
+        }
+        long tail = readTail.get();
+        long size = tail - readHead;
+        if (size < READ_BUFFER_SIZE && readTail.compareAndSet(tail, tail + 1)) {
+            readBuffer.lazySet((int) (tail & READ_BUFFER_MASK), key);
+            size++;
+        }
+        if (size >= DRAIN_THRESHOLD && lock.tryLock()) {
+            try {
+                drainReads();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 记录写入
+     *
+     * @param key         key
+     * @param valueObject 写入的缓存
+     * @return 被淘汰的key及淘汰策略记录的缓存, 没有淘汰时返回null
+     */
+    Map<String, ValueObject> recordWrite(String key, ValueObject valueObject) {
+        if (policy == null) {
+            return null;
+        }
+        int weight = policy.weigh(key, valueObject.getValue());
+        lock.lock();
+        try {
+            drainReads();
+            Map<String, ValueObject> evicted = policy.onWrite(key, weight, valueObject);
+            // 写入后已被删除时移除记录, 已被再次写入时记录当前缓存, 之后的写入会再次更新
+            ValueObject current = lookup.apply(key);
+            if (current == null) {
+                policy.onRemove(key);
+            } else if (current != valueObject) {
+                policy.onReplace(key, current);
+            }
+            return evicted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录删除
+     *
+     * @param key key
+     */
+    void recordRemove(String key) {
+        if (policy == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            drainReads();
+            // 删除后已被再次写入时保留记录
+            if (lookup.apply(key) == null) {
+                policy.onRemove(key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 回放读缓冲区, 遇到已占位但尚未写入的位置时停止, 留到下次处理
+     */
+    private void drainReads() {
+        long head = readHead;
+        long tail = readTail.get();
+        for (; head < tail; head++) {
+            int index = (int) (head & READ_BUFFER_MASK);
+            String key = readBuffer.get(index);
+            if (key == null) {
+                break;
+            }
+            readBuffer.lazySet(index, null);
+            policy.onRead(key);
+        }
+        readHead = head;
+    }
+}
@@ -0,0 +1,299 @@
+package cn.threeoranges.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地缓存快照文件
+ * <p>
+ * 文件格式: 魔数(int) + 序列化方式名称长度(int) + 序列化方式名称, 之后每条记录为
+ * key长度(int) + key(UTF-8) + 过期时间点(long) + 刷新时间点(long) + 逻辑过期时间点(long) + 值长度(int) + 序列化后的值,
+ * 不是异步刷新的缓存逻辑过期时间点为NOT_REFRESHABLE.
+ * 写入时通过FileChannel分块追加到临时文件, 完成后替换原文件; 读取时映射整个文件,
+ * 先扫描记录位置再分段并行解析.
+ *
+ * @author: 李小熊
+ **/
+final class CacheSnapshot {
+    private static final int MAGIC = 0x52435332;
+    /**
+     * 记录头部的时间字段字节数
+     */
+    private static final int TIMES = 24;
+    /**
+     * 不是异步刷新的缓存记录的逻辑过期时间点
+     */
+    static final long NOT_REFRESHABLE = Long.MIN_VALUE;
+    private static final int BUFFER_SIZE = 1 << 20;
+    /**
+     * 映射读取时单个文件的最大字节数
+     */
+    static final long MAXIMUM_BYTES = Integer.MAX_VALUE;
+
+    private CacheSnapshot() {
+    }
+
+    /**
+     * 创建快照写入
+     *
+     * @param path     快照文件
+     * @param codecId  序列化方式名称, 恢复时不一致则放弃
+     * @param maxBytes 文件最大字节数
+     * @return writer
+     * @throws IOException IOException
+     */
+    static Writer writer(Path path, String codecId, long maxBytes) throws IOException {
+        return new Writer(path, codecId, Math.min(maxBytes, MAXIMUM_BYTES));
+    }
+
+    /**
+     * 并行读取快照
+     *
+     * @param path    快照文件
+     * @param codecId 序列化方式名称
+     * @param loader  loader
+     * @return 读取的记录数, 文件不存在或格式、序列化方式不一致时返回0
+     * @throws IOException IOException
+     */
+    static int read(Path path, String codecId, Loader loader) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 8 || size > MAXIMUM_BYTES) {
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC) {
+                return 0;
+            }
+            int codecLength = buffer.getInt(4);
+            if (codecLength < 0 || 8L + codecLength > size || !codecId.equals(readString(buffer, 8, codecLength))) {
+                return 0;
+            }
+            int[] offsets = scan(buffer, 8 + codecLength, (int) size);
+            int parallelism = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), offsets.length / 1024));
+            AtomicInteger loaded = new AtomicInteger();
+            // 解析线程沿用调用方的类加载器, 保证jdk反序列化能找到业务类
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            Thread[] threads = new Thread[parallelism - 1];
+            for (int part = 1; part < parallelism; part++) {
+                int index = part;
+                threads[part - 1] = new Thread(() -> loaded.addAndGet(
+                        loadPart(buffer, offsets, index, parallelism, loader)), "rainbow-cache-snapshot-load-" + part);
+                threads[part - 1].setContextClassLoader(classLoader);
+                threads[part - 1].start();
+            }
+            loaded.addAndGet(loadPart(buffer, offsets, 0, parallelism, loader));
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return loaded.get();
+        }
+    }
+
+    private static int loadPart(ByteBuffer buffer, int[] offsets, int part, int parallelism, Loader loader) {
+        int from = (int) ((long) offsets.length * part / parallelism);
+        int to = (int) ((long) offsets.length * (part + 1) / parallelism);
+        int loaded = 0;
+        for (int i = from; i < to; i++) {
+            if (load(buffer, offsets[i], loader)) {
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 扫描完整记录的起始位置, 末尾不完整的记录丢弃
+     */
+    private static int[] scan(ByteBuffer buffer, int position, int limit) {
+        int[] offsets = new int[1024];
+        int count = 0;
+        while (position + 4 <= limit) {
+            int keyLength = buffer.getInt(position);
+            long valuePosition = (long) position + 4 + keyLength + TIMES;
+            if (keyLength < 0 || valuePosition + 4 > limit) {
+                break;
+            }
+            int valueLength = buffer.getInt((int) valuePosition);
+            long next = valuePosition + 4 + valueLength;
+            if (valueLength < 0 || next > limit) {
+                break;
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = position;
+            position = (int) next;
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    private static boolean load(ByteBuffer buffer, int position, Loader loader) {
+        int keyLength = buffer.getInt(position);
+        String key = readString(buffer, position + 4, keyLength);
+        position += 4 + keyLength;
+        long destroyTime = buffer.getLong(position);
+        long refreshTime = buffer.getLong(position + 8);
+        long expireTime = buffer.getLong(position + 16);
+        int valueLength = buffer.getInt(position + TIMES);
+        byte[] value = new byte[valueLength];
+        ByteBuffer duplicate = buffer.duplicate();
+        ((Buffer) duplicate).position(position + TIMES + 4);
+        duplicate.get(value);
+        try {
+            return loader.load(key, value, destroyTime, refreshTime, expireTime);
+        } catch (RuntimeException e) {
+            // 无法反序列化的记录直接丢弃
+            return false;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer duplicate = buffer.duplicate();
+        ((Buffer) duplicate).position(position);
+        duplicate.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    interface Loader {
+        /**
+         * 恢复一条缓存
+         *
+         * @param key         key
+         * @param value       序列化后的值
+         * @param destroyTime 过期时间点, -1为永久有效
+         * @param refreshTime 开始异步刷新的时间点, -1为不刷新
+         * @param expireTime  逻辑过期时间点, 不是异步刷新的缓存为NOT_REFRESHABLE
+         * @return 是否恢复
+         */
+        boolean load(String key, byte[] value, long destroyTime, long refreshTime, long expireTime);
+    }
+
+    /**
+     * 快照写入, commit之前原快照文件保持不变
+     */
+    static final class Writer implements Closeable {
+        private final Path path;
+        private final Path tempPath;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final long maxBytes;
+        private long bytes;
+        private int count;
+        private boolean committed;
+
+        private Writer(Path path, String codecId, long maxBytes) throws IOException {
+            this.path = path;
+            this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            this.maxBytes = maxBytes;
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            this.channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            byte[] codec = codecId.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(MAGIC).putInt(codec.length).put(codec);
+            bytes = 8L + codec.length;
+        }
+
+        /**
+         * 追加一条记录
+         *
+         * @param key         key
+         * @param value       序列化后的值
+         * @param destroyTime 过期时间点, -1为永久有效
+         * @param refreshTime 开始异步刷新的时间点, -1为不刷新
+         * @param expireTime  逻辑过期时间点, 不是异步刷新的缓存为NOT_REFRESHABLE
+         * @return 超过最大字节数时返回false, 之后不应继续写入
+         * @throws IOException IOException
+         */
+        boolean write(String key, byte[] value, long destroyTime, long refreshTime, long expireTime)
+                throws IOException {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            int length = 8 + TIMES + keyBytes.length + value.length;
+            if (bytes + length > maxBytes) {
+                return false;
+            }
+            if (buffer.remaining() < length) {
+                flush();
+            }
+            if (buffer.remaining() < length) {
+                // 大于缓冲区的记录直接写入
+                ByteBuffer record = ByteBuffer.allocate(length);
+                record.putInt(keyBytes.length).put(keyBytes).putLong(destroyTime).putLong(refreshTime)
+                        .putLong(expireTime).putInt(value.length).put(value);
+                ((Buffer) record).flip();
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            } else {
+                buffer.putInt(keyBytes.length).put(keyBytes).putLong(destroyTime).putLong(refreshTime)
+                        .putLong(expireTime).putInt(value.length).put(value);
+            }
+            bytes += length;
+            count++;
+            return true;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        /**
+         * 写入磁盘并替换原快照文件
+         *
+         * @throws IOException IOException
+         */
+        void commit() throws IOException {
+            flush();
+            channel.force(false);
+            channel.close();
+            try {
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            committed = true;
+        }
+
+        private void flush() throws IOException {
+            ((Buffer) buffer).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            ((Buffer) buffer).clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (committed) {
+                return;
+            }
+            channel.close();
+            Files.deleteIfExists(tempPath);
+        }
+    }
+}
@@ -1,25 +1,109 @@
 package cn.threeoranges.cache;
 
 import cn.threeoranges.annotation.RainbowCache;
+import cn.threeoranges.lock.RedisLockManager;
+import cn.threeoranges.metrics.CacheMetrics;
+import cn.threeoranges.metrics.CacheStats;
+import cn.threeoranges.properties.RainbowCacheProperties;
+import cn.threeoranges.properties.enums.RainbowCacheTypeEnum;
+import cn.threeoranges.thread.executor.RainbowExecutor;
+import cn.threeoranges.thread.pool.RefreshThreadPool;
 import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.reflect.MethodSignature;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.expression.EvaluationContext;
-import org.springframework.expression.Expression;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.expression.spel.support.StandardEvaluationContext;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * @author: 李小熊
  **/
 public class Cacheable {
+    private static final String LOAD_LOCK_PREFIX = "rainbowCacheLoadLock:";
+    /**
+     * 加载锁的统计名称, 所有key共用一个
+     */
+    private static final String LOAD_LOCK_STATS = "rainbowCacheLoadLock";
+    private static final String LOCAL_PREFIX = "simple:";
+    private static final String REDIS_PREFIX = "redis:";
     private final SimpleCache simpleCache = SimpleCache.simpleCache();
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final HotKeyDetector hotKeys = HotKeyDetector.detector();
+    /**
+     * 正在异步刷新的key
+     */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    /**
+     * 正在加载的异步结果, 同一个key并发调用时共享
+     */
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    /**
+     * 等待其他调用者加载的超时时间(毫秒)
+     */
+    private long loadTimeout = 3000L;
+    /**
+     * redis缓存未命中时是否跨节点只加载一次
+     */
+    private boolean distributedLoad = false;
+    /**
+     * TIERED模式本地一级缓存有效时间(秒)
+     */
+    private long localExpiration = 5L;
+    /**
+     * TIERED模式热点key在本地一级缓存的有效时间(秒)
+     */
+    private long hotKeyLocalExpiration = 60L;
+    /**
+     * 跨节点加载使用的锁, 没有redis时为null
+     */
+    private volatile RedisLockManager lockManager;
+    /**
+     * 异步结果未命中时执行业务方法的执行器, 为null时在当前线程执行
+     */
+    private volatile RainbowExecutor executor;
 
     private Cacheable() {
     }
 
+    /**
+     * 根据配置初始化
+     *
+     * @param properties properties
+     */
+    public void configure(RainbowCacheProperties properties) {
+        this.loadTimeout = properties.getLoadTimeout();
+        this.distributedLoad = properties.isDistributedLoad();
+        this.localExpiration = properties.getLocalExpiration();
+        this.hotKeyLocalExpiration = properties.getHotKeyLocalExpiration();
+    }
+
+    /**
+     * 设置跨节点加载使用的锁
+     *
+     * @param lockManager lockManager
+     */
+    public void setLockManager(RedisLockManager lockManager) {
+        this.lockManager = lockManager;
+    }
+
+    /**
+     * 设置执行器, 异步查询redis未命中时在执行器中调用业务方法, 不占用redis客户端的io线程
+     *
+     * @param executor executor
+     */
+    public void setExecutor(RainbowExecutor executor) {
+        this.executor = executor;
+    }
+
     public static Cacheable cacheable() {
         return Instance.INSTANCE;
     }
@@ -27,98 +111,809 @@ public class Cacheable {
     /**
      * 使用本地缓存处理
      *
-     * @param pjp          pjp
-     * @param rainbowCache rainbowCache
+     * @param pjp  pjp
+     * @param plan plan
      * @return result
      * @throws Throwable throwable
      */
-    public Object localCache(ProceedingJoinPoint pjp, RainbowCache rainbowCache) throws Throwable {
+    public Object localCache(ProceedingJoinPoint pjp, CachePlan<RainbowCache> plan) throws Throwable {
         Object object = null;
         // 获取el的值
-        String dynamicKey = getValue(pjp, rainbowCache.dynamicKey());
+        String dynamicKey = plan.dynamicKey(pjp.getArgs());
+        // 缓存时间
+        long expiration = plan.getExpirationNanos();
 
-        for (String key : rainbowCache.keys()) {
+        for (int i = 0; i < plan.size(); i++) {
             // 真正存放缓存的key
-            if (!"".equals(dynamicKey)) {
-                key += ":" + dynamicKey;
+            String key = plan.key(i, dynamicKey);
+            CacheStats stats = plan.getLocalStats(i);
+            if (i == 0) {
+                hotKeys.record(key);
+            }
+            // 开启异步刷新或允许返回旧值
+            if (plan.isRefreshable()) {
+                object = refreshableLocalCache(pjp, plan, key, stats);
+                continue;
             }
             // 查询key缓存是否存在
             object = this.simpleCache.getCache(key);
-            // 缓存时间
-            long expiration = rainbowCache.expiration();
-            // 不存在走业务流程并设置缓存
+            // 不存在走业务流程并设置缓存, 同一个key并发时只加载一次
             if (object == null) {
-                // 业务返回值
-                object = pjp.proceed();
-                if (expiration < 0) {
-                    this.simpleCache.setCache(key, object);
-                    continue;
-                }
-                this.simpleCache.setCache(key, object, expiration, TimeUnit.SECONDS);
+                stats.recordMiss();
+                object = singleFlight.load(LOCAL_PREFIX.concat(key), loadTimeout, () -> {
+                    // 业务返回值
+                    long startTime = System.nanoTime();
+                    Object value = proceed(pjp, stats);
+                    long loadNanos = System.nanoTime() - startTime;
+                    hotKeys.recordLoad(key, loadNanos);
+                    if (expiration < 0) {
+                        this.simpleCache.setCache(key, value);
+                    } else {
+                        this.simpleCache.setCache(key, value, plan.getExpirationNanos(key, loadNanos),
+                                TimeUnit.NANOSECONDS);
+                    }
+                    return value;
+                });
                 continue;
             }
+            stats.recordHit();
 
             // 缓存存在 且 需要续期
-            if (rainbowCache.renew()) {
+            if (plan.isRenew()) {
                 if (expiration < 0) {
                     this.simpleCache.setCache(key, object);
                     continue;
                 }
-                this.simpleCache.setCache(key, object, expiration, TimeUnit.SECONDS);
+                this.simpleCache.setCache(key, object, plan.getExpirationNanos(key, -1L), TimeUnit.NANOSECONDS);
             }
         }
         return object;
     }
 
+    /**
+     * 本地缓存, 支持异步刷新和返回旧值
+     * <p>
+     * 到达refreshAfter或处于staleWhileRevalidate窗口内时返回当前值并提交异步刷新;
+     * 超出窗口后同步加载, 加载失败且旧值过期不超过staleIfError时返回旧值.
+     *
+     * @param pjp   pjp
+     * @param plan  plan
+     * @param key   key
+     * @param stats stats
+     * @return result
+     * @throws Throwable throwable
+     */
+    private Object refreshableLocalCache(ProceedingJoinPoint pjp, CachePlan<RainbowCache> plan, String key,
+                                         CacheStats stats) throws Throwable {
+        RefreshableValue current = this.simpleCache.getRefreshable(key);
+        long now = System.currentTimeMillis();
+        if (current != null) {
+            long staleness = current.staleness(now);
+            if (staleness == 0L || staleness < plan.getStaleWhileRevalidateMillis()) {
+                stats.recordHit();
+                if (staleness > 0L || current.needsRefresh(now)) {
+                    refreshAsync(pjp, plan, key, stats);
+                } else if (plan.isRenew() && plan.getExpiration() >= 0) {
+                    long expireTime = now + TimeUnit.NANOSECONDS.toMillis(plan.getExpirationNanos(key, -1L));
+                    this.simpleCache.renewRefreshable(key, expireTime, expireTime + staleWindow(plan));
+                }
+                return current.getValue();
+            }
+        }
+
+        stats.recordMiss();
+        try {
+            return singleFlight.load(LOCAL_PREFIX.concat(key), loadTimeout,
+                    () -> setRefreshable(key, proceed(pjp, stats), plan));
+        } catch (Throwable e) {
+            if (current != null && plan.getStaleIfErrorMillis() > 0
+                    && current.staleness(now) <= plan.getStaleIfErrorMillis()) {
+                return current.getValue();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 提交异步刷新, 同一个key同一时刻只提交一次, 线程池已满时放弃
+     *
+     * @param pjp   pjp
+     * @param plan  plan
+     * @param key   key
+     * @param stats stats
+     */
+    private void refreshAsync(ProceedingJoinPoint pjp, CachePlan<RainbowCache> plan, String key, CacheStats stats) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        boolean submitted = RefreshThreadPool.getInstance().execute(() -> {
+            try {
+                singleFlight.load(LOCAL_PREFIX.concat(key), loadTimeout,
+                        () -> setRefreshable(key, proceed(pjp, stats), plan));
+            } catch (Throwable ignored) {
+                // 刷新失败时保留旧值, 下次读取再次触发刷新
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+        if (!submitted) {
+            refreshing.remove(key);
+        }
+    }
+
+    private Object setRefreshable(String key, Object value, CachePlan<RainbowCache> plan) {
+        if (value == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        long refreshTime = plan.getRefreshAfterMillis() > 0 ? now + plan.getRefreshAfterMillis() : -1L;
+        long expireTime = plan.getExpiration() >= 0
+                ? now + TimeUnit.NANOSECONDS.toMillis(plan.getExpirationNanos(key, -1L)) : -1L;
+        this.simpleCache.setRefreshable(key, value, refreshTime, expireTime,
+                expireTime == -1L ? -1L : expireTime + staleWindow(plan));
+        return value;
+    }
+
+    /**
+     * 本地缓存实际有效时间在逻辑过期时间之后延长的旧值可用窗口
+     *
+     * @param plan plan
+     * @return 毫秒
+     */
+    private static long staleWindow(CachePlan<RainbowCache> plan) {
+        return Math.max(0L, Math.max(plan.getStaleWhileRevalidateMillis(), plan.getStaleIfErrorMillis()));
+    }
+
     /**
      * 使用redis处理缓存
+     * <p>
+     * 所有key通过一次MGET读取, 任一key命中即返回, 缺失的key用命中值补齐, 续期和补齐通过一次管道发送.
      *
-     * @param pjp          pjp
-     * @param rainbowCache rainbowCache
+     * @param pjp        pjp
+     * @param plan       plan
+     * @param redisCache redisCache
      * @return result
      * @throws Throwable throwable
      */
-    public Object redisCache(ProceedingJoinPoint pjp, RainbowCache rainbowCache, RedisTemplate<String, Object> redisTemplate) throws Throwable {
+    public Object redisCache(ProceedingJoinPoint pjp, CachePlan<RainbowCache> plan, RedisCache redisCache) throws Throwable {
+        if (plan.size() == 0) {
+            return pjp.proceed();
+        }
+        // 真正存放缓存的key
+        List<String> keys = plan.keys(plan.dynamicKey(pjp.getArgs()));
+        hotKeys.record(keys.get(0));
+        return redisLookup(pjp, plan, keys, redisCache);
+    }
+
+    /**
+     * 本地一级缓存 + redis二级缓存
+     *
+     * @param pjp        pjp
+     * @param plan       plan
+     * @param redisCache redisCache
+     * @return result
+     * @throws Throwable throwable
+     */
+    public Object tieredCache(ProceedingJoinPoint pjp, CachePlan<RainbowCache> plan, RedisCache redisCache) throws Throwable {
+        if (plan.size() == 0) {
+            return pjp.proceed();
+        }
+        // 真正存放缓存的key
+        List<String> keys = plan.keys(plan.dynamicKey(pjp.getArgs()));
+        hotKeys.record(keys.get(0));
+
+        // 优先查询本地一级缓存
+        for (int i = 0; i < keys.size(); i++) {
+            CacheStats stats = plan.getLocalStats(i);
+            Object result = this.simpleCache.getCache(keys.get(i));
+            if (result != null) {
+                stats.recordHit();
+                return result;
+            }
+            stats.recordMiss();
+        }
+
+        // 查询redis二级缓存
+        Object object = redisLookup(pjp, plan, keys, redisCache);
+        long expiration = plan.getExpiration(keys.get(0), -1L);
+        for (String key : keys) {
+            setLocal(key, object, expiration);
+        }
+        return object;
+    }
+
+    /**
+     * 写入本地一级缓存, 有效时间不超过redis中的有效时间; 热点key使用hotKeyLocalExpiration, 常驻本地
+     *
+     * @param key        key
+     * @param value      value
+     * @param expiration redis缓存有效时间(秒)
+     */
+    public void setLocal(String key, Object value, long expiration) {
+        if (value == null) {
+            return;
+        }
+        long localTime = hotKeys.isHot(key) ? Math.max(localExpiration, hotKeyLocalExpiration) : localExpiration;
+        if (expiration >= 0) {
+            localTime = Math.min(expiration, localTime);
+        }
+        this.simpleCache.setCache(key, value, localTime, TimeUnit.SECONDS);
+    }
+
+    private Object redisLookup(ProceedingJoinPoint pjp, CachePlan<RainbowCache> plan, List<String> keys,
+                               RedisCache redisCache) throws Throwable {
+        String[] namespaces = plan.getNamespaces();
+        // 查询key缓存是否存在
+        List<Object> results = redisCache.multiGet(keys);
         Object object = null;
-        // 获取el的值
-        String dynamicKey = getValue(pjp, rainbowCache.dynamicKey());
-        for (String key : rainbowCache.keys()) {
-            // 真正存放缓存的key
-            if (!"".equals(dynamicKey)) {
-                key += ":" + dynamicKey;
+        for (int i = 0; i < keys.size(); i++) {
+            Object result = i < results.size() ? results.get(i) : null;
+            CacheStats stats = plan.getRedisStats(i);
+            if (result == null) {
+                stats.recordMiss();
+                continue;
+            }
+            stats.recordHit();
+            if (object == null) {
+                object = result;
             }
+        }
 
-            // 查询key缓存是否存在
-            Object result = redisTemplate.opsForValue().get(key);
-            // 缓存时间
-            long expiration = rainbowCache.expiration();
-            // 不存在走业务流程并设置缓存
+        // 不存在走业务流程并设置缓存, 同一个key并发时只加载一次
+        if (object == null) {
+            return singleFlight.load(REDIS_PREFIX.concat(keys.get(0)), loadTimeout,
+                    () -> loadRedis(pjp, plan, keys, redisCache));
+        }
+
+        // 补齐缺失的key, 需要续期的key只刷新有效时间
+        long expiration = plan.getExpiration(keys.get(0), -1L);
+        RedisCache.Batch batch = redisCache.batch();
+        for (int i = 0; i < keys.size(); i++) {
+            Object result = i < results.size() ? results.get(i) : null;
             if (result == null) {
-                // 业务返回值
-                object = pjp.proceed();
-                if (expiration < 0) {
-                    redisTemplate.opsForValue().set(key, object);
-                    continue;
+                batch.set(namespaces[i], keys.get(i), object, expiration);
+            } else if (plan.isRenew()) {
+                batch.expire(namespaces[i], keys.get(i), expiration);
+            }
+        }
+        batch.execute();
+        return object;
+    }
+
+    /**
+     * 加载数据并写入redis, 开启跨节点加载时只有拿到加载锁的节点执行业务
+     * <p>
+     * 加载锁由RedisLockManager管理: 持有期间自动续期, 解锁时原子地比较并删除; 其他节点收到解锁消息
+     * (或退避超时)后拿到锁, 先确认缓存是否已经写入. 等待超过loadTimeout时本节点直接加载.
+     *
+     * @param pjp        pjp
+     * @param plan       plan
+     * @param keys       keys
+     * @param redisCache redisCache
+     * @return result
+     * @throws Throwable throwable
+     */
+    private Object loadRedis(ProceedingJoinPoint pjp, CachePlan<RainbowCache> plan, List<String> keys,
+                             RedisCache redisCache) throws Throwable {
+        RedisLockManager lockManager = this.lockManager;
+        if (!distributedLoad || lockManager == null) {
+            return loadAndSetRedis(pjp, plan, keys, redisCache);
+        }
+
+        String key = keys.get(0);
+        String lockKey = LOAD_LOCK_PREFIX + key;
+        String token;
+        try {
+            token = lockManager.lock(lockKey, Math.max(loadTimeout, 1000L), loadTimeout,
+                    CacheMetrics.metrics().lock(LOAD_LOCK_STATS));
+        } catch (TimeoutException e) {
+            // 等待超时, 其他节点仍未写入时本节点直接加载
+            Object result = redisCache.get(key);
+            return result != null ? result : loadAndSetRedis(pjp, plan, keys, redisCache);
+        }
+        try {
+            // 拿到锁后再确认一次其他节点是否已经加载
+            Object result = redisCache.get(key);
+            if (result != null) {
+                return result;
+            }
+            return loadAndSetRedis(pjp, plan, keys, redisCache);
+        } finally {
+            lockManager.unlock(lockKey, token);
+        }
+    }
+
+    /**
+     * 批量模式, 集合参数的每个元素单独缓存
+     * <p>
+     * 本地缓存逐个查询, redis通过一次MGET查询所有未命中的元素; 只用仍未命中的元素调用一次业务方法,
+     * 返回值按元素拆分后写入缓存(redis通过一次管道), 最后按参数顺序合并命中和加载的结果.
+     * 业务没有返回的元素不缓存. 批量模式不合并并发加载, 异步刷新和返回旧值不生效.
+     *
+     * @param pjp        pjp
+     * @param plan       plan
+     * @param redisCache redisCache, 本地缓存时为null
+     * @return result
+     * @throws Throwable throwable
+     */
+    public Object batchCache(ProceedingJoinPoint pjp, CachePlan<RainbowCache> plan, RedisCache redisCache) throws Throwable {
+        BatchPlan batch = plan.getBatch();
+        Object[] args = pjp.getArgs();
+        List<Object> ids = batch.ids(args);
+        if (ids == null || plan.size() == 0) {
+            return pjp.proceed();
+        }
+        String dynamicKey = plan.dynamicKey(args);
+        RainbowCacheTypeEnum engine = plan.getEngine();
+        String[] elementKeys = new String[ids.size()];
+        Object[] values = new Object[ids.size()];
+        for (int i = 0; i < ids.size(); i++) {
+            elementKeys[i] = plan.elementKey(dynamicKey, ids.get(i));
+            hotKeys.record(plan.key(0, elementKeys[i]));
+        }
+
+        // 优先查询本地缓存
+        if (engine != RainbowCacheTypeEnum.REDIS) {
+            for (int i = 0; i < ids.size(); i++) {
+                values[i] = localLookup(plan, plan.keys(elementKeys[i]));
+            }
+        }
+        // 查询redis缓存
+        if (engine != RainbowCacheTypeEnum.SIMPLE) {
+            List<Integer> pending = misses(values);
+            if (!pending.isEmpty()) {
+                batchRedisLookup(plan, elementKeys, pending, values, redisCache);
+            }
+        }
+
+        // 只用未命中的元素调用业务方法
+        List<Integer> missing = misses(values);
+        if (missing.isEmpty()) {
+            return batch.merge(ids, values);
+        }
+        List<Object> missingIds = new ArrayList<>(missing.size());
+        for (int i : missing) {
+            missingIds.add(ids.get(i));
+        }
+        CacheStats stats = engine == RainbowCacheTypeEnum.SIMPLE ? plan.getLocalStats(0) : plan.getRedisStats(0);
+        Map<String, Object> loaded = batch.split(proceed(pjp, batch.withIds(args, missingIds), stats));
+        RedisCache.Batch write = engine == RainbowCacheTypeEnum.SIMPLE ? null : redisCache.batch();
+        for (int i : missing) {
+            Object value = loaded.get(String.valueOf(ids.get(i)));
+            if (value == null) {
+                continue;
+            }
+            values[i] = value;
+            List<String> keys = plan.keys(elementKeys[i]);
+            if (write == null) {
+                setLocalAll(plan, keys, value);
+                continue;
+            }
+            long expiration = plan.getExpiration(keys.get(0), -1L);
+            for (int j = 0; j < keys.size(); j++) {
+                write.set(plan.getNamespace(j), keys.get(j), value, expiration);
+                if (engine == RainbowCacheTypeEnum.TIERED) {
+                    setLocal(keys.get(j), value, expiration);
                 }
-                redisTemplate.opsForValue().set(key, object, expiration, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (write != null) {
+            write.execute();
+        }
+        return batch.merge(ids, values);
+    }
+
+    /**
+     * 批量模式下一次MGET查询所有元素的所有命名空间, 补齐缺失的命名空间并按需续期
+     *
+     * @param plan        plan
+     * @param elementKeys 元素的动态键
+     * @param pending     待查询的元素下标
+     * @param values      查询结果
+     * @param redisCache  redisCache
+     */
+    private void batchRedisLookup(CachePlan<RainbowCache> plan, String[] elementKeys, List<Integer> pending,
+                                  Object[] values, RedisCache redisCache) {
+        int size = plan.size();
+        List<String> keys = new ArrayList<>(pending.size() * size);
+        for (int i : pending) {
+            keys.addAll(plan.keys(elementKeys[i]));
+        }
+        List<Object> results = redisCache.multiGet(keys);
+        RedisCache.Batch write = redisCache.batch();
+        for (int p = 0; p < pending.size(); p++) {
+            Object object = null;
+            for (int j = 0; j < size; j++) {
+                int position = p * size + j;
+                Object result = position < results.size() ? results.get(position) : null;
+                CacheStats stats = plan.getRedisStats(j);
+                if (result == null) {
+                    stats.recordMiss();
+                } else {
+                    stats.recordHit();
+                    if (object == null) {
+                        object = result;
+                    }
+                }
+            }
+            if (object == null) {
                 continue;
             }
+            values[pending.get(p)] = object;
+            long expiration = plan.getExpiration(keys.get(p * size), -1L);
+            for (int j = 0; j < size; j++) {
+                int position = p * size + j;
+                String key = keys.get(position);
+                if (position >= results.size() || results.get(position) == null) {
+                    write.set(plan.getNamespace(j), key, object, expiration);
+                } else if (plan.isRenew()) {
+                    write.expire(plan.getNamespace(j), key, expiration);
+                }
+                if (plan.getEngine() == RainbowCacheTypeEnum.TIERED) {
+                    setLocal(key, object, expiration);
+                }
+            }
+        }
+        write.execute();
+    }
 
-            // 缓存存在 且 需要续期
-            if (rainbowCache.renew()) {
-                if (expiration < 0) {
-                    redisTemplate.opsForValue().set(key, result);
+    private static List<Integer> misses(Object[] values) {
+        List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                misses.add(i);
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * 返回CompletableFuture/CompletionStage/Mono/Flux的方法, 缓存异步结果完成后的值
+     * <p>
+     * 任一key命中即包装缓存值返回, 缺失的key用命中值补齐; 未命中时同一个key只调用一次业务方法,
+     * 并发调用者共享同一个加载结果. 存在响应式连接时redis命令不阻塞调用线程.
+     * 异步刷新和返回旧值只对同步方法生效.
+     *
+     * @param pjp                pjp
+     * @param plan               plan
+     * @param redisCache         redisCache, 本地缓存时为null
+     * @param reactiveRedisCache reactiveRedisCache, 为null时redis命令同步执行
+     * @return result
+     */
+    public Object asyncCache(ProceedingJoinPoint pjp, CachePlan<RainbowCache> plan, RedisCache redisCache,
+                             ReactiveRedisCache reactiveRedisCache) {
+        AsyncAdapter adapter = plan.getAsyncAdapter();
+        return adapter.defer(() -> {
+            if (plan.size() == 0) {
+                return adapter.fromFuture(invoke(pjp, adapter));
+            }
+            // 真正存放缓存的key
+            List<String> keys = plan.keys(plan.dynamicKey(pjp.getArgs()));
+            RainbowCacheTypeEnum engine = plan.getEngine();
+            hotKeys.record(keys.get(0));
+
+            // 优先查询本地缓存
+            if (engine != RainbowCacheTypeEnum.REDIS) {
+                Object object = localLookup(plan, keys);
+                if (object != null) {
+                    return adapter.fromValue(object);
+                }
+            }
+
+            CompletableFuture<Object> result;
+            if (engine == RainbowCacheTypeEnum.SIMPLE) {
+                result = loadAsync(LOCAL_PREFIX.concat(keys.get(0)), pjp, adapter, plan.getLocalStats(0),
+                        value -> setLocalAll(plan, keys, value));
+            } else {
+                result = redisLookupAsync(pjp, plan, keys, adapter, redisCache, reactiveRedisCache);
+            }
+            // 本地一级缓存
+            if (engine == RainbowCacheTypeEnum.TIERED) {
+                result = result.thenApply(value -> {
+                    long expiration = plan.getExpiration(keys.get(0), -1L);
+                    for (String key : keys) {
+                        setLocal(key, value, expiration);
+                    }
+                    return value;
+                });
+            }
+            return adapter.fromFuture(result);
+        });
+    }
+
+    /**
+     * 查询本地缓存, 本地引擎时补齐缺失的key并按需续期
+     *
+     * @param plan plan
+     * @param keys keys
+     * @return 命中的值, 全部未命中时返回null
+     */
+    private Object localLookup(CachePlan<RainbowCache> plan, List<String> keys) {
+        for (int i = 0; i < keys.size(); i++) {
+            CacheStats stats = plan.getLocalStats(i);
+            Object object = this.simpleCache.getCache(keys.get(i));
+            if (object == null) {
+                stats.recordMiss();
+                continue;
+            }
+            stats.recordHit();
+            if (plan.getEngine() == RainbowCacheTypeEnum.SIMPLE && (i > 0 || plan.isRenew())) {
+                setLocalAll(plan, keys, object);
+            }
+            return object;
+        }
+        return null;
+    }
+
+    private CompletableFuture<Void> setLocalAll(CachePlan<RainbowCache> plan, List<String> keys, Object value) {
+        long expiration = plan.getExpirationNanos(keys.get(0), -1L);
+        for (String key : keys) {
+            if (expiration < 0) {
+                this.simpleCache.setCache(key, value);
+            } else {
+                this.simpleCache.setCache(key, value, expiration, TimeUnit.NANOSECONDS);
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private CompletableFuture<Object> redisLookupAsync(ProceedingJoinPoint pjp, CachePlan<RainbowCache> plan,
+                                                       List<String> keys, AsyncAdapter adapter, RedisCache redisCache,
+                                                       ReactiveRedisCache reactiveRedisCache) {
+        CompletableFuture<List<Object>> lookup = reactiveRedisCache != null ? reactiveRedisCache.multiGet(keys)
+                : CompletableFuture.completedFuture(redisCache.multiGet(keys));
+        return lookup.thenCompose(results -> {
+            Object object = null;
+            for (int i = 0; i < keys.size(); i++) {
+                Object result = i < results.size() ? results.get(i) : null;
+                CacheStats stats = plan.getRedisStats(i);
+                if (result == null) {
+                    stats.recordMiss();
                     continue;
                 }
-                redisTemplate.opsForValue().set(key, result, expiration, TimeUnit.MILLISECONDS);
+                stats.recordHit();
+                if (object == null) {
+                    object = result;
+                }
             }
 
-            // 记录返回值
+            // 不存在走业务流程并设置缓存, 同一个key并发时只加载一次; 非阻塞查询在io线程完成, 切换到执行器加载
             if (object == null) {
-                object = result;
+                Supplier<CompletableFuture<Object>> load = () -> loadAsync(REDIS_PREFIX.concat(keys.get(0)), pjp,
+                        adapter, plan.getRedisStats(0),
+                        value -> writeRedis(plan, keys, null, value, redisCache, reactiveRedisCache));
+                return reactiveRedisCache == null ? load.get() : executeAsync(load);
+            }
+            // 补齐缺失的key, 需要续期的key只刷新有效时间, 不等待写入完成
+            writeRedis(plan, keys, results, object, redisCache, reactiveRedisCache);
+            return CompletableFuture.completedFuture(object);
+        });
+    }
+
+    /**
+     * 写入redis
+     *
+     * @param plan               plan
+     * @param keys               keys
+     * @param results            查询结果, 为null时写入所有key
+     * @param value              value
+     * @param redisCache         redisCache
+     * @param reactiveRedisCache reactiveRedisCache
+     * @return 写入完成
+     */
+    private static CompletableFuture<Void> writeRedis(CachePlan<RainbowCache> plan, List<String> keys,
+                                                      List<Object> results, Object value, RedisCache redisCache,
+                                                      ReactiveRedisCache reactiveRedisCache) {
+        long expiration = plan.getExpiration(keys.get(0), -1L);
+        List<String> namespaces = new ArrayList<>(keys.size());
+        List<String> writeKeys = new ArrayList<>(keys.size());
+        List<Object> values = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            boolean exists = results != null && i < results.size() && results.get(i) != null;
+            if (!exists || plan.isRenew()) {
+                namespaces.add(plan.getNamespace(i));
+                writeKeys.add(keys.get(i));
+                // 已存在的key只续期
+                values.add(exists ? null : value);
             }
         }
-        return object;
+        if (reactiveRedisCache != null) {
+            return reactiveRedisCache.write(namespaces, writeKeys, values, expiration);
+        }
+        RedisCache.Batch batch = redisCache.batch();
+        for (int i = 0; i < writeKeys.size(); i++) {
+            if (values.get(i) == null) {
+                batch.expire(namespaces.get(i), writeKeys.get(i), expiration);
+            } else {
+                batch.set(namespaces.get(i), writeKeys.get(i), value, expiration);
+            }
+        }
+        batch.execute();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 加载异步结果, 同一个key同一时刻只调用一次业务方法
+     * <p>
+     * 结果写入缓存完成前到达的调用者继续共享本次加载结果, 每个调用者拿到独立的future,
+     * 取消或修改自己的future不影响其他调用者.
+     *
+     * @param flightKey flightKey
+     * @param pjp       pjp
+     * @param adapter   adapter
+     * @param stats     stats
+     * @param store     写入缓存
+     * @return result
+     */
+    private CompletableFuture<Object> loadAsync(String flightKey, ProceedingJoinPoint pjp, AsyncAdapter adapter,
+                                                CacheStats stats, Function<Object, CompletableFuture<?>> store) {
+        CompletableFuture<Object> loading = inFlight.get(flightKey);
+        if (loading == null) {
+            CompletableFuture<Object> promise = new CompletableFuture<>();
+            loading = inFlight.putIfAbsent(flightKey, promise);
+            if (loading == null) {
+                loading = promise;
+                long startTime = System.nanoTime();
+                invoke(pjp, adapter).whenComplete((value, error) -> {
+                    stats.recordLoad(System.nanoTime() - startTime, error == null);
+                    if (error != null) {
+                        promise.completeExceptionally(error);
+                    } else {
+                        promise.complete(value);
+                    }
+                    CompletableFuture<?> stored;
+                    try {
+                        stored = error == null && value != null ? store.apply(value) : promise;
+                    } catch (Throwable e) {
+                        stored = promise;
+                    }
+                    stored.whenComplete((ignored, e) -> inFlight.remove(flightKey, promise));
+                });
+            }
+        }
+        return loading.thenApply(Function.identity());
+    }
+
+    /**
+     * 在执行器中执行, 未设置执行器时直接执行
+     *
+     * @param task task
+     * @param <T>  结果类型
+     * @return task的结果, 执行器已满或已关闭时为失败的future
+     */
+    private <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> task) {
+        RainbowExecutor executor = this.executor;
+        if (executor == null) {
+            return task.get();
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        boolean submitted = executor.execute(() -> {
+            try {
+                task.get().whenComplete((value, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        if (!submitted) {
+            result.completeExceptionally(new RejectedExecutionException("Rainbow cache executor rejected the task"));
+        }
+        return result;
+    }
+
+    /**
+     * 异步结果完成后执行操作, 同步方法直接执行
+     * <p>
+     * 异步结果可能在redis客户端或http客户端的io线程完成, 操作中含有阻塞的redis命令, 因此切换到执行器执行,
+     * 操作完成后返回的结果才完成.
+     *
+     * @param plan   plan
+     * @param result 业务返回值
+     * @param action 操作, 结果为空时不执行
+     * @return 方法返回值
+     */
+    public Object whenComplete(CachePlan<?> plan, Object result, Consumer<Object> action) {
+        AsyncAdapter adapter = plan.getAsyncAdapter();
+        if (adapter == null) {
+            if (result != null) {
+                action.accept(result);
+            }
+            return result;
+        }
+        return adapter.defer(() -> adapter.fromFuture(adapter.toFuture(result).thenCompose(value -> {
+            if (value == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return executeAsync(() -> {
+                action.accept(value);
+                return CompletableFuture.completedFuture(value);
+            });
+        })));
+    }
+
+    /**
+     * 调用业务方法并订阅异步结果, 同步抛出的异常转为失败的future
+     *
+     * @param pjp     pjp
+     * @param adapter adapter
+     * @return result
+     */
+    private static CompletableFuture<Object> invoke(ProceedingJoinPoint pjp, AsyncAdapter adapter) {
+        try {
+            return adapter.toFuture(pjp.proceed());
+        } catch (Throwable e) {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * 执行业务并记录加载耗时
+     *
+     * @param pjp   pjp
+     * @param stats stats
+     * @return result
+     * @throws Throwable throwable
+     */
+    private static Object proceed(ProceedingJoinPoint pjp, CacheStats stats) throws Throwable {
+        return proceed(pjp, null, stats);
+    }
+
+    /**
+     * 使用指定参数执行业务并记录加载耗时
+     *
+     * @param pjp   pjp
+     * @param args  方法参数, 为null时使用原参数
+     * @param stats stats
+     * @return result
+     * @throws Throwable throwable
+     */
+    private static Object proceed(ProceedingJoinPoint pjp, Object[] args, CacheStats stats) throws Throwable {
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            Object value = args == null ? pjp.proceed() : pjp.proceed(args);
+            success = true;
+            return value;
+        } finally {
+            stats.recordLoad(System.nanoTime() - startTime, success);
+        }
+    }
+
+    /**
+     * 执行业务并写入redis, 有效时间按本次加载耗时和访问频率调整
+     *
+     * @param pjp        pjp
+     * @param plan       plan
+     * @param keys       keys
+     * @param redisCache redisCache
+     * @return result
+     * @throws Throwable throwable
+     */
+    private Object loadAndSetRedis(ProceedingJoinPoint pjp, CachePlan<RainbowCache> plan, List<String> keys,
+                                   RedisCache redisCache) throws Throwable {
+        long startTime = System.nanoTime();
+        Object value = proceed(pjp, plan.getRedisStats(0));
+        long loadNanos = System.nanoTime() - startTime;
+        String key = keys.get(0);
+        hotKeys.recordLoad(key, loadNanos);
+        return setRedis(value, plan.getNamespaces(), keys, plan.getExpiration(key, loadNanos), redisCache);
+    }
+
+    private static Object setRedis(Object value, String[] namespaces, List<String> keys, long expiration,
+                                   RedisCache redisCache) {
+        RedisCache.Batch batch = redisCache.batch();
+        for (int i = 0; i < keys.size(); i++) {
+            batch.set(namespaces[i], keys.get(i), value, expiration);
+        }
+        batch.execute();
+        return value;
     }
 
     /**
@@ -132,21 +927,7 @@ public class Cacheable {
         if (el == null || "".equals(el)) {
             return "";
         }
-        SpelExpressionParser parserSpEl = new SpelExpressionParser();
-        // 解析el表达式
-        Expression expression = parserSpEl.parseExpression(el);
-        // 获取参数名
-        String[] paramNames = ((MethodSignature) pjp.getSignature()).getParameterNames();
-        // 获取参数值
-        Object[] args = pjp.getArgs();
-        // 组装context
-        EvaluationContext context = new StandardEvaluationContext();
-        for (int i = 0; i < args.length; i++) {
-            context.setVariable(paramNames[i], args[i]);
-        }
-        // 获取表达式值
-        Object object = expression.getValue(context);
-        return object == null ? "" : object.toString();
+        return KeyExpressionEvaluator.evaluator().getValue(pjp, el);
     }
 
     private static class Instance {
@@ -0,0 +1,18 @@
+package cn.threeoranges.cache;
+
+/**
+ * 本地缓存序列化存储时的缓存值
+ *
+ * @author: 李小熊
+ **/
+final class EncodedValue {
+    private final byte[] bytes;
+
+    EncodedValue(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+}
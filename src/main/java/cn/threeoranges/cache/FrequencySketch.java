@@ -0,0 +1,128 @@
+package cn.threeoranges.cache;
+
+import java.util.Arrays;
+
+/**
+ * 访问频率估算(4bit Count-Min Sketch)
+ * <p>
+ * 每个long存放16个4bit计数器, 每个元素映射到4个计数器, 取最小值作为频率估算;
+ * 累计增长达到采样上限后所有计数器减半, 让历史热度随时间衰减.
+ * 非线程安全, 由调用方加锁.
+ *
+ * @author: 李小熊
+ **/
+final class FrequencySketch {
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    /**
+     * 计数表最大长度(long个数), 防止按权重配置时申请过大内存
+     */
+    private static final int MAXIMUM_TABLE_LENGTH = 1 << 22;
+
+    private long[] table = new long[0];
+    private int tableMask;
+    private int sampleSize;
+    private int size;
+
+    /**
+     * 按预计元素个数扩容计数表, 扩容后历史频率清零
+     *
+     * @param maximum 预计元素个数
+     */
+    void ensureCapacity(long maximum) {
+        int length = (int) Math.min(Math.max(maximum, 16L), MAXIMUM_TABLE_LENGTH);
+        length = Integer.highestOneBit(length - 1) << 1;
+        if (table.length >= length) {
+            return;
+        }
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = 10 * length;
+        size = 0;
+    }
+
+    /**
+     * 清空所有计数
+     */
+    void clear() {
+        Arrays.fill(table, 0L);
+        size = 0;
+    }
+
+    /**
+     * 估算元素访问频率(0~15)
+     *
+     * @param key key
+     * @return frequency
+     */
+    int frequency(Object key) {
+        if (table.length == 0) {
+            return 0;
+        }
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key key
+     */
+    void increment(Object key) {
+        if (table.length == 0) {
+            return;
+        }
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 所有计数器减半
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEED[i]) * SEED[i];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,48 @@
+package cn.threeoranges.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * CompletableFuture/CompletionStage返回值适配
+ *
+ * @author: 李小熊
+ **/
+final class FutureAdapter implements AsyncAdapter {
+    private static final FutureAdapter INSTANCE = new FutureAdapter();
+
+    private FutureAdapter() {
+    }
+
+    static AsyncAdapter forType(Class<?> returnType) {
+        if (returnType == CompletableFuture.class || returnType == CompletionStage.class) {
+            return INSTANCE;
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Object> toFuture(Object result) {
+        if (result == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return ((CompletionStage<Object>) result).toCompletableFuture();
+    }
+
+    @Override
+    public Object fromFuture(CompletableFuture<Object> future) {
+        return future;
+    }
+
+    @Override
+    public Object fromValue(Object value) {
+        return CompletableFuture.completedFuture(value);
+    }
+
+    @Override
+    public Object defer(Supplier<Object> supplier) {
+        return supplier.get();
+    }
+}
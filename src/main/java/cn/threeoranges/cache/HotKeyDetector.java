@@ -0,0 +1,309 @@
+package cn.threeoranges.cache;
+
+import cn.threeoranges.properties.RainbowCacheProperties;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 热点key识别
+ * <p>
+ * 每sampleRate次访问随机抽样一次记入频率草图(4位计数, 定期减半), 估算频率达到HOT_FREQUENCY的key视为热点;
+ * 另一个草图记录每个key的加载次数(不抽样), 近期加载过多次却从未被抽中的key视为冷key, 即每次加载的缓存只服务了很少的访问;
+ * 首次加载时访问频率必然很低, 不判断为冷key. 另外维护频率最高的少量key及其加载耗时, 用于输出热点报告.
+ * 访问路径通过tryLock访问草图, 锁被占用时丢弃本次抽样或按非热点处理, 不阻塞; 只有输出报告和清空时等待锁.
+ *
+ * @author: 李小熊
+ **/
+public final class HotKeyDetector {
+    /**
+     * 热点key的估算频率(草图计数上限为15)
+     */
+    static final int HOT_FREQUENCY = 8;
+    /**
+     * 判断冷key需要的最少加载次数
+     */
+    private static final int COLD_LOADS = 2;
+    static final int HOT = 1;
+    static final int NEUTRAL = 0;
+    static final int COLD = -1;
+    private static final int SKETCH_CAPACITY = 1 << 14;
+    private static final int REPORT_CAPACITY = 32;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final FrequencySketch loadSketch = new FrequencySketch();
+    /**
+     * 频率最高的key, 只在持有lock时访问
+     */
+    private final Map<String, Candidate> candidates = new HashMap<>(REPORT_CAPACITY * 2);
+    /**
+     * 抽样间隔, 小于等于0为不识别热点
+     */
+    private volatile int sampleRate = 16;
+
+    private HotKeyDetector() {
+        sketch.ensureCapacity(SKETCH_CAPACITY);
+        loadSketch.ensureCapacity(SKETCH_CAPACITY);
+    }
+
+    public static HotKeyDetector detector() {
+        return Instance.INSTANCE;
+    }
+
+    /**
+     * 根据配置初始化
+     *
+     * @param properties properties
+     */
+    public void configure(RainbowCacheProperties properties) {
+        this.sampleRate = properties.getHotKeySampleRate();
+    }
+
+    public boolean isEnabled() {
+        return sampleRate > 0;
+    }
+
+    /**
+     * 记录一次访问, 按抽样间隔记入
+     *
+     * @param key key
+     */
+    void record(String key) {
+        int rate = sampleRate;
+        if (rate <= 0 || (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0)) {
+            return;
+        }
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            sketch.increment(key);
+            offer(key, sketch.frequency(key));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录一次加载, 加载耗时只保留报告中的key
+     *
+     * @param key   key
+     * @param nanos 加载耗时(纳秒)
+     */
+    void recordLoad(String key, long nanos) {
+        if (sampleRate <= 0 || !lock.tryLock()) {
+            return;
+        }
+        try {
+            loadSketch.increment(key);
+            Candidate candidate = candidates.get(key);
+            if (candidate != null) {
+                candidate.loads++;
+                candidate.loadNanos += nanos;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 估算频率, 锁被占用时不等待
+     *
+     * @param key key
+     * @return 0 ~ 15, 未开启或锁被占用时返回-1
+     */
+    int frequency(String key) {
+        if (sampleRate <= 0 || !lock.tryLock()) {
+            return -1;
+        }
+        try {
+            return sketch.frequency(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 访问热度, 锁被占用时不等待
+     *
+     * @param key key
+     * @return HOT热点, COLD冷key, 未开启、锁被占用或无法判断时返回NEUTRAL
+     */
+    int temperature(String key) {
+        if (sampleRate <= 0 || !lock.tryLock()) {
+            return NEUTRAL;
+        }
+        try {
+            int frequency = sketch.frequency(key);
+            if (frequency >= HOT_FREQUENCY) {
+                return HOT;
+            }
+            return frequency == 0 && loadSketch.frequency(key) >= COLD_LOADS ? COLD : NEUTRAL;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 是否为热点key, 锁被占用时返回false
+     *
+     * @param key key
+     * @return hot
+     */
+    public boolean isHot(String key) {
+        return frequency(key) >= HOT_FREQUENCY;
+    }
+
+    /**
+     * 热点报告, 按估算频率从高到低排列
+     *
+     * @return 报告中的key, 包含未达到热点频率的候选
+     */
+    public List<HotKey> hotKeys() {
+        List<HotKey> hotKeys = new ArrayList<>(REPORT_CAPACITY);
+        lock.lock();
+        try {
+            for (Candidate candidate : candidates.values()) {
+                int frequency = sketch.frequency(candidate.key);
+                hotKeys.add(new HotKey(candidate.key, frequency, frequency >= HOT_FREQUENCY,
+                        (long) candidate.samples * Math.max(sampleRate, 1),
+                        candidate.loads, candidate.loads == 0 ? 0L : candidate.loadNanos / candidate.loads));
+            }
+        } finally {
+            lock.unlock();
+        }
+        hotKeys.sort((a, b) -> Integer.compare(b.getFrequency(), a.getFrequency()));
+        return hotKeys;
+    }
+
+    /**
+     * 清空频率和报告
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            sketch.clear();
+            loadSketch.clear();
+            candidates.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 报告未满时直接加入, 已满时替换频率最低且低于当前key的候选
+     */
+    private void offer(String key, int frequency) {
+        Candidate candidate = candidates.get(key);
+        if (candidate != null) {
+            candidate.samples++;
+            return;
+        }
+        if (candidates.size() >= REPORT_CAPACITY) {
+            Candidate victim = null;
+            int victimFrequency = frequency;
+            for (Candidate c : candidates.values()) {
+                int f = sketch.frequency(c.key);
+                if (f < victimFrequency) {
+                    victim = c;
+                    victimFrequency = f;
+                }
+            }
+            if (victim == null) {
+                return;
+            }
+            candidates.remove(victim.key);
+        }
+        candidate = new Candidate(key);
+        candidate.samples = 1;
+        candidates.put(key, candidate);
+    }
+
+    private static final class Candidate {
+        private final String key;
+        private int samples;
+        private long loads;
+        private long loadNanos;
+
+        private Candidate(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * 热点报告中的一项
+     */
+    public static final class HotKey {
+        private final String key;
+        private final int frequency;
+        private final boolean hot;
+        private final long estimatedAccesses;
+        private final long loads;
+        private final long averageLoadNanos;
+
+        private HotKey(String key, int frequency, boolean hot, long estimatedAccesses, long loads,
+                       long averageLoadNanos) {
+            this.key = key;
+            this.frequency = frequency;
+            this.hot = hot;
+            this.estimatedAccesses = estimatedAccesses;
+            this.loads = loads;
+            this.averageLoadNanos = averageLoadNanos;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * 草图中的估算频率, 0 ~ 15
+         *
+         * @return frequency
+         */
+        public int getFrequency() {
+            return frequency;
+        }
+
+        public boolean isHot() {
+            return hot;
+        }
+
+        /**
+         * 进入报告后的估算访问次数(抽样次数 * 抽样间隔)
+         *
+         * @return accesses
+         */
+        public long getEstimatedAccesses() {
+            return estimatedAccesses;
+        }
+
+        /**
+         * 进入报告后的加载次数
+         *
+         * @return loads
+         */
+        public long getLoads() {
+            return loads;
+        }
+
+        public double getAverageLoadTime(TimeUnit unit) {
+            return (double) averageLoadNanos / unit.toNanos(1);
+        }
+
+        @Override
+        public String toString() {
+            return key + "(frequency=" + frequency + ", hot=" + hot + ", accesses~" + estimatedAccesses
+                    + ", loads=" + loads + ", avgLoad=" + TimeUnit.NANOSECONDS.toMillis(averageLoadNanos) + "ms)";
+        }
+    }
+
+    private static class Instance {
+        private static final HotKeyDetector INSTANCE = new HotKeyDetector();
+    }
+}
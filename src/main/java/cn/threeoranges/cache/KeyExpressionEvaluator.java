@@ -0,0 +1,144 @@
+package cn.threeoranges.cache;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * 动态键表达式求值
+ * <p>
+ * 每个方法的参数名和表达式只解析一次, SpEL表达式开启编译模式;
+ * 形如 #param 的表达式直接按下标取参数, 不经过SpEL.
+ *
+ * @author: 李小熊
+ **/
+final class KeyExpressionEvaluator {
+    private static final Pattern PARAMETER = Pattern.compile("#[A-Za-z_$][A-Za-z0-9_$]*");
+
+    private final SpelExpressionParser parser = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, KeyExpressionEvaluator.class.getClassLoader()));
+    private final ConcurrentMap<Method, ConcurrentMap<String, KeyExpression>> expressions = new ConcurrentHashMap<>();
+
+    private KeyExpressionEvaluator() {
+    }
+
+    static KeyExpressionEvaluator evaluator() {
+        return Instance.INSTANCE;
+    }
+
+    /**
+     * 表达式求值
+     *
+     * @param pjp pjp
+     * @param el  el expression
+     * @return el result
+     */
+    String getValue(ProceedingJoinPoint pjp, String el) {
+        MethodSignature signature = (MethodSignature) pjp.getSignature();
+        return getExpression(signature, el).getValue(pjp.getArgs());
+    }
+
+    /**
+     * 获取方法上已解析的表达式
+     *
+     * @param signature signature
+     * @param el        el expression
+     * @return expression
+     */
+    KeyExpression getExpression(MethodSignature signature, String el) {
+        Method method = signature.getMethod();
+        ConcurrentMap<String, KeyExpression> methodExpressions = expressions.get(method);
+        if (methodExpressions == null) {
+            methodExpressions = expressions.computeIfAbsent(method, m -> new ConcurrentHashMap<>(4));
+        }
+        KeyExpression expression = methodExpressions.get(el);
+        if (expression == null) {
+            String[] paramNames = signature.getParameterNames();
+            expression = methodExpressions.computeIfAbsent(el, e -> parse(e, paramNames));
+        }
+        return expression;
+    }
+
+    private KeyExpression parse(String el, String[] paramNames) {
+        if (paramNames != null && PARAMETER.matcher(el).matches()) {
+            String name = el.substring(1);
+            for (int i = 0; i < paramNames.length; i++) {
+                if (name.equals(paramNames[i])) {
+                    return new ParameterExpression(i);
+                }
+            }
+        }
+        return new SpelExpression(parser.parseExpression(el), paramNames);
+    }
+
+    /**
+     * 已解析的动态键表达式
+     */
+    interface KeyExpression {
+        /**
+         * 求值
+         *
+         * @param args 方法参数
+         * @return 表达式结果, null时返回空字符串
+         */
+        String getValue(Object[] args);
+    }
+
+    /**
+     * 直接引用参数的表达式
+     */
+    private static final class ParameterExpression implements KeyExpression {
+        private final int index;
+
+        private ParameterExpression(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getValue(Object[] args) {
+            Object object = args[index];
+            return object == null ? "" : object.toString();
+        }
+    }
+
+    /**
+     * SpEL表达式
+     */
+    private static final class SpelExpression implements KeyExpression {
+        private final Expression expression;
+        private final String[] paramNames;
+
+        private SpelExpression(Expression expression, String[] paramNames) {
+            this.expression = expression;
+            this.paramNames = paramNames;
+        }
+
+        @Override
+        public String getValue(Object[] args) {
+            // 组装context
+            EvaluationContext context = new StandardEvaluationContext();
+            if (paramNames != null) {
+                for (int i = 0; i < args.length; i++) {
+                    context.setVariable(paramNames[i], args[i]);
+                }
+            }
+            // 获取表达式值
+            Object object = expression.getValue(context);
+            return object == null ? "" : object.toString();
+        }
+    }
+
+    private static class Instance {
+        private static final KeyExpressionEvaluator INSTANCE = new KeyExpressionEvaluator();
+    }
+}
@@ -0,0 +1,49 @@
+package cn.threeoranges.cache;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 存放long值的缓存, 数值保存在long字段中, 读取和累加不装箱、不解析
+ *
+ * @author: 李小熊
+ **/
+final class LongValueObject extends ValueObject {
+    private static final long serialVersionUID = 4807342519372618471L;
+    private static final AtomicLongFieldUpdater<LongValueObject> UPDATER =
+            AtomicLongFieldUpdater.newUpdater(LongValueObject.class, "longValue");
+
+    private volatile long longValue;
+    /**
+     * 过期时间点(毫秒), -1为永久有效
+     */
+    private final long destroyTime;
+
+    LongValueObject(long value, long destroyTime) {
+        super(null);
+        this.longValue = value;
+        this.destroyTime = destroyTime;
+    }
+
+    long getLong() {
+        return longValue;
+    }
+
+    long addAndGet(long delta) {
+        return UPDATER.addAndGet(this, delta);
+    }
+
+    @Override
+    public long getDestroyTime() {
+        return destroyTime;
+    }
+
+    /**
+     * 按对象读取时装箱
+     *
+     * @return Long
+     */
+    @Override
+    public Object getValue() {
+        return longValue;
+    }
+}
@@ -0,0 +1,242 @@
+package cn.threeoranges.cache;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 堆外内存存储(slab分配)
+ * <p>
+ * 堆外内存按1MB分页, 每页只切分一种规格的槽位(64B, 128B ... 1MB), 释放的槽位按规格回收复用;
+ * 整页槽位都已释放后归还到空闲页列表, 可以重新切分为其他规格, 避免页长期被某个规格占用.
+ * 每个槽位前4个字节为版本号, 释放时版本号加1, 页重新切分时页的纪元加1, 读取时校验两者, 防止读到已被复用的槽位.
+ *
+ * @author: 李小熊
+ **/
+final class OffHeapStore {
+    private static final int PAGE_SHIFT = 20;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int MIN_SLOT_SHIFT = 6;
+    private static final int HEADER = 4;
+
+    private final Page[] pages;
+    private final SizeClass[] sizeClasses = new SizeClass[PAGE_SHIFT - MIN_SLOT_SHIFT + 1];
+    private int pageCount;
+    /**
+     * 已归还的空闲页下标
+     */
+    private int[] freePages = new int[16];
+    private int freePageCount;
+
+    /**
+     * @param capacity 堆外内存容量(字节)
+     */
+    OffHeapStore(long capacity) {
+        this.pages = new Page[(int) Math.max(1L, Math.min(Integer.MAX_VALUE, capacity >>> PAGE_SHIFT))];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass(1 << (MIN_SLOT_SHIFT + i));
+        }
+    }
+
+    /**
+     * 写入数据
+     *
+     * @param bytes bytes
+     * @return 数据位置, 超过最大规格或容量已满时返回null
+     */
+    OffHeapValue put(byte[] bytes) {
+        int slotSize = bytes.length + HEADER;
+        if (slotSize > PAGE_SIZE) {
+            return null;
+        }
+        int index = Math.max(0, 32 - Integer.numberOfLeadingZeros(slotSize - 1) - MIN_SLOT_SHIFT);
+        SizeClass sizeClass = sizeClasses[index];
+        long address = sizeClass.allocate();
+        if (address < 0) {
+            return null;
+        }
+        Page page = pages[(int) (address >>> 32)];
+        int offset = (int) address;
+        ByteBuffer buffer = page.buffer.duplicate();
+        int generation = buffer.getInt(offset);
+        ((Buffer) buffer).position(offset + HEADER);
+        buffer.put(bytes);
+        return new OffHeapValue(address, bytes.length, page.epoch, generation);
+    }
+
+    /**
+     * 读取数据
+     *
+     * @param value 数据位置
+     * @return bytes, 槽位已释放时返回null
+     */
+    byte[] get(OffHeapValue value) {
+        Page page = pages[(int) (value.address >>> 32)];
+        int offset = (int) value.address;
+        byte[] bytes = new byte[value.length];
+        long stamp = page.lock.tryOptimisticRead();
+        if (stamp != 0L && copy(page, offset, bytes, value) && page.lock.validate(stamp)) {
+            return bytes;
+        }
+        stamp = page.lock.readLock();
+        try {
+            return copy(page, offset, bytes, value) ? bytes : null;
+        } finally {
+            page.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 释放槽位
+     *
+     * @param value 数据位置
+     */
+    void remove(OffHeapValue value) {
+        int pageIndex = (int) (value.address >>> 32);
+        Page page = pages[pageIndex];
+        int offset = (int) value.address;
+        SizeClass sizeClass;
+        long stamp = page.lock.writeLock();
+        try {
+            if (page.epoch != value.epoch || page.buffer.getInt(offset) != value.generation) {
+                return;
+            }
+            page.buffer.putInt(offset, value.generation + 1);
+            // 槽位释放前页不会被归还, 所属规格不变
+            sizeClass = page.sizeClass;
+        } finally {
+            page.lock.unlockWrite(stamp);
+        }
+        sizeClass.free(value.address);
+    }
+
+    private static boolean copy(Page page, int offset, byte[] bytes, OffHeapValue value) {
+        ByteBuffer buffer = page.buffer.duplicate();
+        if (page.epoch != value.epoch || buffer.getInt(offset) != value.generation) {
+            return false;
+        }
+        ((Buffer) buffer).position(offset + HEADER);
+        buffer.get(bytes);
+        return true;
+    }
+
+    /**
+     * 分配页, 优先复用已归还的空闲页
+     *
+     * @param sizeClass 页所属规格
+     * @return 页下标, 容量已满时返回-1
+     */
+    private synchronized int allocatePage(SizeClass sizeClass) {
+        if (freePageCount > 0) {
+            int index = freePages[--freePageCount];
+            Page page = pages[index];
+            long stamp = page.lock.writeLock();
+            try {
+                page.sizeClass = sizeClass;
+                page.epoch++;
+            } finally {
+                page.lock.unlockWrite(stamp);
+            }
+            return index;
+        }
+        if (pageCount >= pages.length) {
+            return -1;
+        }
+        pages[pageCount] = new Page(ByteBuffer.allocateDirect(PAGE_SIZE), sizeClass);
+        return pageCount++;
+    }
+
+    /**
+     * 归还槽位已全部释放的页
+     *
+     * @param index 页下标
+     */
+    private synchronized void releasePage(int index) {
+        if (freePageCount == freePages.length) {
+            freePages = Arrays.copyOf(freePages, freePageCount << 1);
+        }
+        freePages[freePageCount++] = index;
+    }
+
+    /**
+     * 同一规格的槽位分配
+     */
+    private final class SizeClass {
+        private final int slotSize;
+        private long[] free = new long[16];
+        private int freeCount;
+        private int page = -1;
+        private int next = PAGE_SIZE;
+
+        private SizeClass(int slotSize) {
+            this.slotSize = slotSize;
+        }
+
+        private synchronized long allocate() {
+            if (freeCount > 0) {
+                long address = free[--freeCount];
+                pages[(int) (address >>> 32)].used++;
+                return address;
+            }
+            if (next + slotSize > PAGE_SIZE) {
+                int newPage = allocatePage(this);
+                if (newPage < 0) {
+                    return -1L;
+                }
+                page = newPage;
+                next = 0;
+            }
+            long address = ((long) page << 32) | next;
+            next += slotSize;
+            pages[page].used++;
+            return address;
+        }
+
+        private synchronized void free(long address) {
+            int index = (int) (address >>> 32);
+            // 整页已空时从空闲槽位中移除该页的槽位并归还, 正在切分的页同样归还, 下次分配时重新取页
+            if (--pages[index].used == 0) {
+                if (index == page) {
+                    page = -1;
+                    next = PAGE_SIZE;
+                }
+                int count = 0;
+                for (int i = 0; i < freeCount; i++) {
+                    if ((int) (free[i] >>> 32) != index) {
+                        free[count++] = free[i];
+                    }
+                }
+                freeCount = count;
+                releasePage(index);
+                return;
+            }
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount << 1);
+            }
+            free[freeCount++] = address;
+        }
+    }
+
+    private static final class Page {
+        private final ByteBuffer buffer;
+        private final StampedLock lock = new StampedLock();
+        /**
+         * 所属规格, 页重新切分时修改
+         */
+        private volatile SizeClass sizeClass;
+        /**
+         * 纪元, 页重新切分时加1
+         */
+        private volatile int epoch;
+        /**
+         * 已分配的槽位个数, 只在所属规格的锁内访问
+         */
+        private int used;
+
+        private Page(ByteBuffer buffer, SizeClass sizeClass) {
+            this.buffer = buffer;
+            this.sizeClass = sizeClass;
+        }
+    }
+}
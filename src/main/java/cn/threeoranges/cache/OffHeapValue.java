@@ -0,0 +1,29 @@
+package cn.threeoranges.cache;
+
+/**
+ * 堆外存储的缓存值在堆内的索引
+ *
+ * @author: 李小熊
+ **/
+final class OffHeapValue {
+    /**
+     * 页下标(高32位) + 页内偏移(低32位)
+     */
+    final long address;
+    final int length;
+    /**
+     * 写入时页的纪元
+     */
+    final int epoch;
+    /**
+     * 写入时槽位的版本号
+     */
+    final int generation;
+
+    OffHeapValue(long address, int length, int epoch, int generation) {
+        this.address = address;
+        this.length = length;
+        this.epoch = epoch;
+        this.generation = generation;
+    }
+}
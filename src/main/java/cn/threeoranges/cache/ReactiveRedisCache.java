@@ -0,0 +1,137 @@
+package cn.threeoranges.cache;
+
+import cn.threeoranges.metrics.CacheMetrics;
+import cn.threeoranges.metrics.Latency;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 非阻塞的redis缓存操作, 供异步返回值的方法使用
+ * <p>
+ * 与RedisCache使用相同的key、命名空间集合和序列化方式, 命令通过Lettuce的响应式连接发送,
+ * 不占用调用线程. Lettuce在共享连接上自动流水线发送并发的命令.
+ *
+ * @author: 李小熊
+ **/
+public class ReactiveRedisCache {
+    private final ReactiveRedisTemplate<String, Object> template;
+    private final Latency multiGetLatency = CacheMetrics.metrics().redisLatency("mget");
+    private final Latency pipelineLatency = CacheMetrics.metrics().redisLatency("pipeline");
+
+    private ReactiveRedisCache(ReactiveRedisTemplate<String, Object> template) {
+        this.template = template;
+    }
+
+    /**
+     * 使用redisTemplate的连接和序列化方式创建, key、value、hash的序列化方式都与redisTemplate一致,
+     * 保证与同步操作读写同一个物理key
+     *
+     * @param redisTemplate redisTemplate
+     * @return 连接不支持响应式或类路径中没有Reactor时返回null
+     */
+    public static ReactiveRedisCache create(RedisTemplate<String, Object> redisTemplate) {
+        RedisConnectionFactory connectionFactory = redisTemplate.getConnectionFactory();
+        if (!AsyncAdapter.REACTOR_PRESENT || !(connectionFactory instanceof ReactiveRedisConnectionFactory)) {
+            return null;
+        }
+        RedisSerializationContext<String, Object> context = RedisSerializationContext
+                .<String, Object>newSerializationContext()
+                .key(serializer(redisTemplate.getKeySerializer()))
+                .value(serializer(redisTemplate.getValueSerializer()))
+                .hashKey(serializer(redisTemplate.getHashKeySerializer()))
+                .hashValue(serializer(redisTemplate.getHashValueSerializer()))
+                .build();
+        return new ReactiveRedisCache(
+                new ReactiveRedisTemplate<>((ReactiveRedisConnectionFactory) connectionFactory, context));
+    }
+
+    /**
+     * redisTemplate中未设置序列化方式时按原始字节读写, 与redisTemplate的行为一致
+     *
+     * @param serializer redisTemplate的序列化方式
+     * @param <T>        类型
+     * @return serializer
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> RedisSerializer<T> serializer(RedisSerializer<?> serializer) {
+        return (RedisSerializer<T>) (serializer != null ? serializer : RedisSerializer.byteArray());
+    }
+
+    /**
+     * 一次读取多个key
+     *
+     * @param keys keys
+     * @return 与keys顺序一致的结果, 不存在的key对应null
+     */
+    public CompletableFuture<List<Object>> multiGet(List<String> keys) {
+        long startTime = System.nanoTime();
+        return template.opsForValue().multiGet(keys)
+                .defaultIfEmpty(new ArrayList<>(keys.size()))
+                .doFinally(signal -> multiGetLatency.record(System.nanoTime() - startTime))
+                .toFuture();
+    }
+
+    /**
+     * 写入缓存并登记到命名空间索引, 同时去掉索引中已过期的key
+     *
+     * @param namespaces 命名空间
+     * @param keys       keys
+     * @param values     values, 为null的key只续期
+     * @param expiration 有效时间(秒), 小于0为永久有效
+     * @return 所有命令完成
+     */
+    public CompletableFuture<Void> write(List<String> namespaces, List<String> keys, List<Object> values,
+                                         long expiration) {
+        if (keys.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long startTime = System.nanoTime();
+        long now = System.currentTimeMillis();
+        Duration timeout = expiration < 0 ? null : Duration.ofSeconds(expiration);
+        double score = RedisCache.score(now, expiration);
+        Set<String> indexes = new LinkedHashSet<>();
+        List<Mono<?>> commands = new ArrayList<>(keys.size() * 2 + 1);
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            Object value = values.get(i);
+            // 续期
+            if (value == null) {
+                if (timeout != null) {
+                    commands.add(template.expire(key, timeout));
+                }
+            } else {
+                commands.add(timeout == null ? template.opsForValue().set(key, value)
+                        : template.opsForValue().set(key, value, timeout));
+            }
+            String index = RedisCache.INDEX_PREFIX + namespaces.get(i);
+            indexes.add(index);
+            commands.add(template.execute(connection -> connection.zSetCommands()
+                    .zAdd(buffer(index), score, buffer(key))).next());
+        }
+        for (String index : indexes) {
+            commands.add(template.execute(connection -> connection.zSetCommands()
+                    .zRemRangeByScore(buffer(index), Range.closed(0d, (double) now))).next());
+        }
+        return Mono.when(commands)
+                .doFinally(signal -> pipelineLatency.record(System.nanoTime() - startTime))
+                .toFuture();
+    }
+
+    private static ByteBuffer buffer(String value) {
+        return ByteBuffer.wrap(RedisCache.bytes(value));
+    }
+}
@@ -0,0 +1,84 @@
+package cn.threeoranges.cache;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Reactor Mono/Flux返回值适配, 只在类路径中存在Reactor时加载
+ * <p>
+ * 缓存查询在订阅时执行; Flux缓存收集后的List, 命中时重新发出.
+ *
+ * @author: 李小熊
+ **/
+final class ReactorAdapter {
+    private static final AsyncAdapter MONO = new MonoAdapter();
+    private static final AsyncAdapter FLUX = new FluxAdapter();
+
+    private ReactorAdapter() {
+    }
+
+    static AsyncAdapter forType(Class<?> returnType) {
+        if (returnType == Mono.class) {
+            return MONO;
+        }
+        if (returnType == Flux.class) {
+            return FLUX;
+        }
+        return null;
+    }
+
+    private static final class MonoAdapter implements AsyncAdapter {
+        @Override
+        @SuppressWarnings("unchecked")
+        public CompletableFuture<Object> toFuture(Object result) {
+            return result == null ? CompletableFuture.completedFuture(null) : ((Mono<Object>) result).toFuture();
+        }
+
+        @Override
+        public Object fromFuture(CompletableFuture<Object> future) {
+            return Mono.fromFuture(future);
+        }
+
+        @Override
+        public Object fromValue(Object value) {
+            return Mono.just(value);
+        }
+
+        @Override
+        public Object defer(Supplier<Object> supplier) {
+            return Mono.defer(() -> (Mono<?>) supplier.get());
+        }
+    }
+
+    private static final class FluxAdapter implements AsyncAdapter {
+        @Override
+        @SuppressWarnings("unchecked")
+        public CompletableFuture<Object> toFuture(Object result) {
+            if (result == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return ((Flux<Object>) result).collectList().<Object>map(list -> list).toFuture();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object fromFuture(CompletableFuture<Object> future) {
+            return Mono.fromFuture(future).flatMapIterable(list -> (List<Object>) list);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object fromValue(Object value) {
+            return Flux.fromIterable((List<Object>) value);
+        }
+
+        @Override
+        public Object defer(Supplier<Object> supplier) {
+            return Flux.defer(() -> (Flux<?>) supplier.get());
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package cn.threeoranges.cache;
+
+import cn.threeoranges.metrics.CacheMetrics;
+import cn.threeoranges.metrics.Latency;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis缓存操作
+ * <p>
+ * 每个命名空间(注解中的keys)维护一个有序集合记录其下写入过的key, 分值为过期时间点(毫秒, 永久有效为+inf),
+ * 写入和清理时用ZREMRANGEBYSCORE去掉已过期的key, 集合大小只与未过期的key个数相关.
+ * 清理时用ZSCAN分批匹配前缀并删除, 不一次读取整个集合, 也不使用KEYS命令扫描整个库.
+ * 一次调用涉及的多个key通过MGET读取, 写入和续期通过管道批量发送.
+ * <p>
+ * 连接redis集群时, MGET和DEL按slot分组, 每个slot一条命令, 所有分组通过一次管道发送, 由客户端并行发往各节点;
+ * 客户端不支持集群管道(Jedis)时逐组发送. 清理整个命名空间时还会在每个主节点上用SCAN查找遗漏的key.
+ *
+ * @author: 李小熊
+ **/
+public class RedisCache {
+    /**
+     * 命名空间索引(有序集合), 成员为UTF-8编码的key
+     */
+    static final String INDEX_PREFIX = "rainbowCache:index:";
+    /**
+     * 批量写入中的续期标记, 只由Batch.expire写入
+     */
+    private static final Object RENEW = new Object();
+    /**
+     * 旧版本的命名空间集合, 清理整个命名空间时一并删除
+     */
+    private static final String LEGACY_NAMESPACE_PREFIX = "rainbowCache:namespace:";
+    /**
+     * 清理时每批扫描和删除的key个数
+     */
+    private static final int CLEAR_BATCH = 1000;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final Latency getLatency = CacheMetrics.metrics().redisLatency("get");
+    private final Latency multiGetLatency = CacheMetrics.metrics().redisLatency("mget");
+    private final Latency pipelineLatency = CacheMetrics.metrics().redisLatency("pipeline");
+    private final Latency clearLatency = CacheMetrics.metrics().redisLatency("clear");
+    /**
+     * 是否连接redis集群
+     */
+    private final boolean cluster;
+    /**
+     * 集群连接是否支持管道
+     */
+    private volatile boolean clusterPipeline = true;
+
+    public RedisCache(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+        this.cluster = isCluster(redisTemplate.getConnectionFactory());
+    }
+
+    private static boolean isCluster(RedisConnectionFactory connectionFactory) {
+        if (connectionFactory == null) {
+            return false;
+        }
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            return connection instanceof RedisClusterConnection;
+        } catch (RuntimeException e) {
+            // redis暂时无法连接时按单节点处理
+            return false;
+        }
+    }
+
+    public boolean isCluster() {
+        return cluster;
+    }
+
+    public RedisTemplate<String, Object> getRedisTemplate() {
+        return redisTemplate;
+    }
+
+    public Object get(String key) {
+        long startTime = System.nanoTime();
+        try {
+            return redisTemplate.opsForValue().get(key);
+        } finally {
+            getLatency.record(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * 一次读取多个key
+     *
+     * @param keys keys
+     * @return 与keys顺序一致的结果, 不存在的key对应null
+     */
+    public List<Object> multiGet(List<String> keys) {
+        if (keys.size() == 1) {
+            List<Object> results = new ArrayList<>(1);
+            results.add(get(keys.get(0)));
+            return results;
+        }
+        long startTime = System.nanoTime();
+        List<Object> results;
+        try {
+            results = cluster ? clusterMultiGet(keys) : redisTemplate.opsForValue().multiGet(keys);
+        } finally {
+            multiGetLatency.record(System.nanoTime() - startTime);
+        }
+        return results == null ? new ArrayList<>(keys.size()) : results;
+    }
+
+    /**
+     * 集群中按slot分组MGET, 所有分组通过一次管道发送
+     *
+     * @param keys keys
+     * @return 与keys顺序一致的结果
+     */
+    private List<Object> clusterMultiGet(List<String> keys) {
+        Map<Integer, List<Integer>> slots = groupBySlot(keys);
+        if (slots.size() == 1) {
+            return redisTemplate.opsForValue().multiGet(keys);
+        }
+        List<List<String>> groups = new ArrayList<>(slots.size());
+        for (List<Integer> positions : slots.values()) {
+            List<String> group = new ArrayList<>(positions.size());
+            for (int position : positions) {
+                group.add(keys.get(position));
+            }
+            groups.add(group);
+        }
+        List<Object> groupResults = executeGroups(groups, (ops, group) -> ops.opsForValue().multiGet(group));
+        Object[] results = new Object[keys.size()];
+        int index = 0;
+        for (List<Integer> positions : slots.values()) {
+            Object groupResult = groupResults.get(index++);
+            if (!(groupResult instanceof List)) {
+                continue;
+            }
+            List<?> values = (List<?>) groupResult;
+            for (int i = 0; i < positions.size() && i < values.size(); i++) {
+                results[positions.get(i)] = values.get(i);
+            }
+        }
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    /**
+     * 集群中删除多个key, 按slot分组, 每个slot一条DEL
+     *
+     * @param keys keys
+     */
+    private void delete(Collection<String> keys) {
+        if (!cluster) {
+            redisTemplate.delete(keys);
+            return;
+        }
+        Map<Integer, List<String>> groups = new LinkedHashMap<>();
+        for (String key : keys) {
+            groups.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(key), slot -> new ArrayList<>()).add(key);
+        }
+        if (groups.size() == 1) {
+            redisTemplate.delete(keys);
+            return;
+        }
+        executeGroups(new ArrayList<>(groups.values()), (ops, group) -> ops.delete(group));
+    }
+
+    private static Map<Integer, List<Integer>> groupBySlot(List<String> keys) {
+        Map<Integer, List<Integer>> slots = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            slots.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(keys.get(i)), slot -> new ArrayList<>()).add(i);
+        }
+        return slots;
+    }
+
+    /**
+     * 每组发送一条命令, 优先通过管道发送, 集群连接不支持管道时逐组发送
+     *
+     * @param groups  同一个slot的key
+     * @param command 命令
+     * @return 每组的结果
+     */
+    private List<Object> executeGroups(List<List<String>> groups, GroupCommand command) {
+        if (clusterPipeline) {
+            try {
+                return redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                        RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                        for (List<String> group : groups) {
+                            command.execute(ops, group);
+                        }
+                        return null;
+                    }
+                });
+            } catch (UnsupportedOperationException e) {
+                clusterPipeline = false;
+            }
+        }
+        List<Object> results = new ArrayList<>(groups.size());
+        for (List<String> group : groups) {
+            results.add(command.execute(redisTemplate, group));
+        }
+        return results;
+    }
+
+    /**
+     * 在每个主节点上用SCAN查找匹配的key
+     *
+     * @param pattern pattern
+     * @return keys
+     */
+    private List<String> scanMasters(String pattern) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(1000).build();
+        List<String> keys = new ArrayList<>();
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            RedisClusterConnection clusterConnection = (RedisClusterConnection) connection;
+            for (RedisClusterNode node : clusterConnection.clusterGetNodes()) {
+                if (!node.isMaster()) {
+                    continue;
+                }
+                try (Cursor<byte[]> cursor = clusterConnection.scan(node, options)) {
+                    while (cursor.hasNext()) {
+                        keys.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                    }
+                } catch (IOException e) {
+                    // 关闭游标失败不影响已读取的key
+                }
+            }
+            return null;
+        });
+        return keys;
+    }
+
+    /**
+     * 转义glob中的特殊字符
+     *
+     * @param value value
+     * @return pattern
+     */
+    private static String escapeGlob(String value) {
+        StringBuilder pattern = new StringBuilder(value.length() + 4);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                pattern.append('\\');
+            }
+            pattern.append(c);
+        }
+        return pattern.toString();
+    }
+
+    /**
+     * 写入缓存并登记到命名空间
+     *
+     * @param namespace  命名空间
+     * @param key        key
+     * @param value      value
+     * @param expiration 有效时间(秒), 小于0为永久有效
+     */
+    public void set(String namespace, String key, Object value, long expiration) {
+        batch().set(namespace, key, value, expiration).execute();
+    }
+
+    /**
+     * 创建批量写入
+     *
+     * @return batch
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * 清理命名空间下以prefix开头的缓存
+     *
+     * @param namespace 命名空间
+     * @param prefix    前缀, 与命名空间相同时清理整个命名空间
+     */
+    public void clear(String namespace, String prefix) {
+        long startTime = System.nanoTime();
+        try {
+            doClear(namespace, prefix);
+        } finally {
+            clearLatency.record(System.nanoTime() - startTime);
+        }
+    }
+
+    private void doClear(String namespace, String prefix) {
+        byte[] index = bytes(INDEX_PREFIX + namespace);
+        boolean whole = namespace.equals(prefix);
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(whole ? "*" : escapeGlob(prefix) + "*").count(CLEAR_BATCH).build();
+        List<String> keys = new ArrayList<>();
+        keys.add(prefix);
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            // 已过期的key不需要再删除
+            connection.zRemRangeByScore(index, 0, System.currentTimeMillis());
+            try (Cursor<RedisZSetCommands.Tuple> cursor = connection.zScan(index, options)) {
+                while (cursor.hasNext()) {
+                    keys.add(new String(cursor.next().getValue(), StandardCharsets.UTF_8));
+                    if (keys.size() >= CLEAR_BATCH) {
+                        deleteIndexed(connection, index, keys, whole);
+                        keys.clear();
+                    }
+                }
+            } catch (IOException e) {
+                // 关闭游标失败不影响已读取的key
+            }
+            deleteIndexed(connection, index, keys, whole);
+            return null;
+        });
+        if (!whole) {
+            return;
+        }
+        List<String> rest = new ArrayList<>();
+        rest.add(INDEX_PREFIX + namespace);
+        rest.add(LEGACY_NAMESPACE_PREFIX + namespace);
+        // 集群中索引与key可能不在同一个节点, 节点故障切换后索引可能缺少部分key
+        if (cluster) {
+            rest.addAll(scanMasters(escapeGlob(namespace) + ":*"));
+        }
+        delete(rest);
+    }
+
+    /**
+     * 删除一批key, 清理部分命名空间时同时从索引中移除; 清理整个命名空间时最后删除整个索引
+     *
+     * @param connection connection
+     * @param index      索引
+     * @param keys       keys
+     * @param whole      是否清理整个命名空间
+     */
+    private void deleteIndexed(RedisConnection connection, byte[] index, List<String> keys, boolean whole) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        delete(keys);
+        if (!whole) {
+            byte[][] members = new byte[keys.size()][];
+            for (int i = 0; i < keys.size(); i++) {
+                members[i] = bytes(keys.get(i));
+            }
+            connection.zRem(index, members);
+        }
+    }
+
+    static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 索引中的分值
+     *
+     * @param now        当前时间(毫秒)
+     * @param expiration 有效时间(秒), 小于0为永久有效
+     * @return 过期时间点(毫秒), 永久有效为+inf
+     */
+    static double score(long now, long expiration) {
+        return expiration < 0 ? Double.POSITIVE_INFINITY : now + TimeUnit.SECONDS.toMillis(expiration);
+    }
+
+    /**
+     * 对同一个slot的一组key执行的命令
+     */
+    @FunctionalInterface
+    private interface GroupCommand {
+        Object execute(RedisOperations<String, Object> ops, List<String> group);
+    }
+
+    /**
+     * 批量写入, 所有命令通过一次管道发送
+     */
+    public class Batch {
+        private final List<String> namespaces = new ArrayList<>();
+        private final List<String> keys = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+        private final List<Long> expirations = new ArrayList<>();
+
+        private Batch() {
+        }
+
+        /**
+         * 写入缓存并登记到命名空间
+         *
+         * @param namespace  命名空间
+         * @param key        key
+         * @param value      value, 为null时忽略
+         * @param expiration 有效时间(秒), 小于0为永久有效
+         * @return this
+         */
+        public Batch set(String namespace, String key, Object value, long expiration) {
+            if (value == null) {
+                return this;
+            }
+            namespaces.add(namespace);
+            keys.add(key);
+            values.add(value);
+            expirations.add(expiration);
+            return this;
+        }
+
+        /**
+         * 续期, 不重写缓存值, 同时更新命名空间索引中的过期时间
+         *
+         * @param namespace  命名空间
+         * @param key        key
+         * @param expiration 有效时间(秒), 小于0时忽略
+         * @return this
+         */
+        public Batch expire(String namespace, String key, long expiration) {
+            if (expiration < 0) {
+                return this;
+            }
+            namespaces.add(namespace);
+            keys.add(key);
+            values.add(RENEW);
+            expirations.add(expiration);
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return keys.isEmpty();
+        }
+
+        /**
+         * 发送所有命令
+         */
+        public void execute() {
+            if (keys.isEmpty()) {
+                return;
+            }
+            long startTime = System.nanoTime();
+            try {
+                if (cluster && !clusterPipeline) {
+                    send(redisTemplate);
+                } else {
+                    pipeline();
+                }
+            } catch (UnsupportedOperationException e) {
+                clusterPipeline = false;
+                send(redisTemplate);
+            } finally {
+                pipelineLatency.record(System.nanoTime() - startTime);
+            }
+        }
+
+        private void pipeline() {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    send((RedisOperations<String, Object>) operations);
+                    return null;
+                }
+            });
+        }
+
+        private void send(RedisOperations<String, Object> ops) {
+            long now = System.currentTimeMillis();
+            Set<String> indexes = new LinkedHashSet<>();
+            for (int i = 0; i < keys.size(); i++) {
+                String key = keys.get(i);
+                Object value = values.get(i);
+                long expiration = expirations.get(i);
+                // 续期
+                if (value == RENEW) {
+                    ops.expire(key, expiration, TimeUnit.SECONDS);
+                } else if (expiration < 0) {
+                    ops.opsForValue().set(key, value);
+                } else {
+                    ops.opsForValue().set(key, value, expiration, TimeUnit.SECONDS);
+                }
+                String index = INDEX_PREFIX + namespaces.get(i);
+                indexes.add(index);
+                double score = score(now, expiration);
+                ops.execute((RedisCallback<Object>) connection -> connection.zAdd(bytes(index), score, bytes(key)));
+            }
+            // 去掉索引中已过期的key
+            for (String index : indexes) {
+                ops.execute((RedisCallback<Object>) connection -> connection.zRemRangeByScore(bytes(index), 0, now));
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package cn.threeoranges.cache;
+
+/**
+ * 开启异步刷新或过期后仍可使用旧值时, 从本地缓存读取的值及其刷新、过期时间
+ * <p>
+ * 只用于读取, 本地缓存中存放的是缓存值本身, 时间记录在{@link ValueObject.Refreshable}中.
+ *
+ * @author: 李小熊
+ **/
+final class RefreshableValue {
+    private final Object value;
+    /**
+     * 开始异步刷新的时间点(毫秒), -1为不刷新
+     */
+    private final long refreshTime;
+    /**
+     * 过期时间点(毫秒), -1为永久有效
+     */
+    private final long expireTime;
+
+    RefreshableValue(Object value, long refreshTime, long expireTime) {
+        this.value = value;
+        this.refreshTime = refreshTime;
+        this.expireTime = expireTime;
+    }
+
+    Object getValue() {
+        return value;
+    }
+
+    long getRefreshTime() {
+        return refreshTime;
+    }
+
+    long getExpireTime() {
+        return expireTime;
+    }
+
+    boolean isExpired(long now) {
+        return expireTime != -1 && expireTime <= now;
+    }
+
+    boolean needsRefresh(long now) {
+        return refreshTime != -1 && refreshTime <= now;
+    }
+
+    /**
+     * 过期时长(毫秒), 未过期时为0
+     *
+     * @param now 当前时间
+     * @return staleness
+     */
+    long staleness(long now) {
+        return isExpired(now) ? now - expireTime : 0L;
+    }
+}
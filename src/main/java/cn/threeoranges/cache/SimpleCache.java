@@ -1,43 +1,339 @@
 package cn.threeoranges.cache;
 
-import org.springframework.scheduling.annotation.Scheduled;
+import cn.threeoranges.codec.CompactCacheCodec;
+import cn.threeoranges.codec.RainbowCacheCodec;
+import cn.threeoranges.metrics.CacheMetrics;
+import cn.threeoranges.properties.RainbowCacheProperties;
+import cn.threeoranges.thread.pool.CleanUpThreadPool;
+import cn.threeoranges.thread.pool.SnapshotThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
  * @author: 李小熊
  **/
 public class SimpleCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SimpleCache.class);
+    /**
+     * 分段个数上限, 不小于cpu核数的2的幂
+     */
+    private static final int CONCURRENCY = concurrency(Runtime.getRuntime().availableProcessors());
+    /**
+     * 按个数限制容量时每个分段的最小容量
+     */
+    private static final long MIN_SEGMENT_SIZE = 64L;
+    /**
+     * 按权重限制容量时每个分段的最小权重
+     */
+    private static final long MIN_SEGMENT_WEIGHT = 1L << 20;
 
     /**
      * 本地缓存
      */
     private final Map<String, ValueObject> caches = new ConcurrentHashMap<>();
     /**
-     * 定时清理锁
+     * 有序key索引, 用于按前缀查找
+     */
+    private final NavigableSet<String> index = new ConcurrentSkipListSet<>();
+    /**
+     * 时间轮到期处理, 各分段共用
+     */
+    private final TimerWheel.Expirer expirer = new TimerWheel.Expirer() {
+        @Override
+        public boolean expire(String key, long now) {
+            ValueObject valueObject = caches.get(key);
+            if (valueObject == null || valueObject.getDestroyTime() == -1) {
+                return true;
+            }
+            if (valueObject.getDestroyTime() <= now) {
+                remove(key, valueObject);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public long destroyTime(String key) {
+            ValueObject valueObject = caches.get(key);
+            return valueObject == null ? -1L : valueObject.getDestroyTime();
+        }
+    };
+    /**
+     * 按key划分的分段, 各自维护过期时间轮和淘汰策略, 个数为2的幂
+     */
+    private volatile CacheSegment[] segments;
+    /**
+     * 权重计算
+     */
+    private Weigher weigher = Weigher.estimated();
+    /**
+     * 序列化存储时使用的序列化方式, 为null时直接存放对象
+     */
+    private volatile RainbowCacheCodec codec;
+    /**
+     * 堆外存储, 未开启时为null
      */
-    private boolean clearLock = false;
+    private volatile OffHeapStore offHeapStore;
+    private final CacheMetrics metrics = CacheMetrics.metrics();
+    /**
+     * 是否估算内存, 注册统计导出后开启
+     */
+    private volatile boolean estimating;
+    /**
+     * 未开启序列化存储时快照使用的序列化方式
+     */
+    private final RainbowCacheCodec snapshotCodec = new CompactCacheCodec();
+    /**
+     * 快照文件, 未开启时为null
+     */
+    private volatile Path snapshotPath;
+    private volatile long snapshotMaxBytes;
+    private ScheduledFuture<?> snapshotTask;
 
     private SimpleCache() {
+        this.segments = createSegments(-1L, -1L);
+        CleanUpThreadPool.getInstance().scheduleWithFixedDelay(this::cleanUpTask, 1L, 1L, TimeUnit.SECONDS);
+    }
 
+    /**
+     * 根据配置初始化本地缓存
+     *
+     * @param properties properties
+     */
+    public void configure(RainbowCacheProperties properties) {
+        // 堆外存储, 缓存值序列化后存放在堆外内存
+        if (properties.getOffHeapCapacity() > 0 && offHeapStore == null) {
+            if (codec == null) {
+                codec = new CompactCacheCodec();
+            }
+            offHeapStore = new OffHeapStore(properties.getOffHeapCapacity());
+        }
+
+        CacheSegment[] segments = createSegments(properties.getMaximumSize(), properties.getMaximumWeight());
+        // 已有缓存纳入新分段的时间轮和淘汰策略
+        for (Map.Entry<String, ValueObject> entry : caches.entrySet()) {
+            String key = entry.getKey();
+            CacheSegment segment = segments[segmentIndex(key, segments.length)];
+            long destroyTime = entry.getValue().getDestroyTime();
+            if (destroyTime != -1) {
+                segment.schedule(key, destroyTime);
+            }
+            evict(segment.recordWrite(key, entry.getValue()));
+        }
+        this.segments = segments;
+        configureSnapshot(properties);
     }
 
     /**
-     * 定时清理过期缓存(10s)
+     * 创建分段, 容量平分到各分段; 容量较小时减少分段个数, 避免单个分段过小导致淘汰失真
+     *
+     * @param maximumSize   最大缓存个数, 小于等于0为不限制
+     * @param maximumWeight 最大缓存权重, 小于等于0为不限制
+     * @return segments
      */
-    @Scheduled(cron = "0/10 * * * * ? *")
-    private void cleanUpTask() {
-        if (clearLock) {
+    private CacheSegment[] createSegments(long maximumSize, long maximumWeight) {
+        int count = 1;
+        while (count < CONCURRENCY
+                && (maximumSize <= 0 || maximumSize / (count << 1) >= MIN_SEGMENT_SIZE)
+                && (maximumWeight <= 0 || maximumWeight / (count << 1) >= MIN_SEGMENT_WEIGHT)) {
+            count <<= 1;
+        }
+        boolean bounded = maximumSize > 0 || maximumWeight > 0;
+        long now = System.currentTimeMillis();
+        CacheSegment[] segments = new CacheSegment[count];
+        for (int i = 0; i < count; i++) {
+            TinyLfuPolicy policy = bounded ? new TinyLfuPolicy(
+                    share(maximumSize, count, i), share(maximumWeight, count, i), weigher) : null;
+            segments[i] = new CacheSegment(expirer, policy, caches::get, now);
+        }
+        return segments;
+    }
+
+    private static int concurrency(int processors) {
+        return processors <= 1 ? 1 : Integer.highestOneBit(processors - 1) << 1;
+    }
+
+    private static long share(long maximum, int count, int index) {
+        if (maximum <= 0) {
+            return -1L;
+        }
+        return maximum / count + (index < maximum % count ? 1 : 0);
+    }
+
+    private static int segmentIndex(String key, int count) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (count - 1);
+    }
+
+    private CacheSegment segmentFor(String key) {
+        CacheSegment[] segments = this.segments;
+        return segments[segmentIndex(key, segments.length)];
+    }
+
+    /**
+     * 开启快照时从快照恢复缓存, 并定时写入快照
+     *
+     * @param properties properties
+     */
+    private synchronized void configureSnapshot(RainbowCacheProperties properties) {
+        if (snapshotTask != null) {
+            snapshotTask.cancel(false);
+            snapshotTask = null;
+        }
+        String path = properties.getSnapshotPath();
+        if (path == null || path.isEmpty()) {
+            this.snapshotPath = null;
             return;
         }
-        caches.keySet().parallelStream().forEach(this::triggerCleanUp);
-        clearLock = false;
+        this.snapshotPath = Paths.get(path);
+        this.snapshotMaxBytes = properties.getSnapshotMaxBytes();
+        try {
+            restoreSnapshot();
+        } catch (IOException | RuntimeException ignored) {
+            // 快照损坏时以空缓存启动, 下次写入快照时覆盖
+        }
+        long interval = properties.getSnapshotInterval();
+        if (interval > 0) {
+            snapshotTask = SnapshotThreadPool.getInstance().scheduleWithFixedDelay(() -> {
+                try {
+                    saveSnapshot();
+                } catch (IOException | RuntimeException ignored) {
+                    // 写入失败时保留上一次的快照, 下次定时任务重试
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 将未过期的缓存写入快照文件, 超过snapshotMaxBytes后不再写入剩余缓存, 无法序列化的缓存跳过
+     *
+     * @return 写入的缓存个数, 未开启快照时返回0
+     * @throws IOException IOException
+     */
+    public synchronized int saveSnapshot() throws IOException {
+        Path path = this.snapshotPath;
+        if (path == null) {
+            return 0;
+        }
+        RainbowCacheCodec codec = this.codec;
+        RainbowCacheCodec valueCodec = codec == null ? snapshotCodec : codec;
+        long now = System.currentTimeMillis();
+        try (CacheSnapshot.Writer writer = CacheSnapshot.writer(path, valueCodec.id(), snapshotMaxBytes)) {
+            for (Map.Entry<String, ValueObject> entry : caches.entrySet()) {
+                ValueObject valueObject = entry.getValue();
+                if (isExpired(valueObject, now)) {
+                    continue;
+                }
+                byte[] bytes;
+                try {
+                    bytes = snapshotValue(valueObject, valueCodec);
+                } catch (RuntimeException e) {
+                    continue;
+                }
+                long refreshTime = -1L;
+                long expireTime = CacheSnapshot.NOT_REFRESHABLE;
+                if (valueObject instanceof ValueObject.Refreshable) {
+                    refreshTime = ((ValueObject.Refreshable) valueObject).getRefreshTime();
+                    expireTime = ((ValueObject.Refreshable) valueObject).getExpireTime();
+                }
+                if (bytes != null && !writer.write(entry.getKey(), bytes, valueObject.getDestroyTime(),
+                        refreshTime, expireTime)) {
+                    break;
+                }
+            }
+            writer.commit();
+            return writer.getCount();
+        }
+    }
+
+    /**
+     * 从快照文件恢复缓存, 跳过已过期和已存在的key, 异步刷新的缓存恢复刷新和逻辑过期时间
+     *
+     * @return 恢复的缓存个数, 未开启快照或快照不存在时返回0
+     * @throws IOException IOException
+     */
+    public int restoreSnapshot() throws IOException {
+        Path path = this.snapshotPath;
+        if (path == null) {
+            return 0;
+        }
+        RainbowCacheCodec codec = this.codec;
+        RainbowCacheCodec valueCodec = codec == null ? snapshotCodec : codec;
+        long now = System.currentTimeMillis();
+        return CacheSnapshot.read(path, valueCodec.id(), (key, bytes, destroyTime, refreshTime, expireTime) -> {
+            if ((destroyTime != -1 && destroyTime <= now) || caches.containsKey(key)) {
+                return false;
+            }
+            // 序列化存储时直接存放快照中的字节, 先试解码一次, 无法解码的记录丢弃
+            if (codec != null) {
+                codec.decode(bytes);
+            }
+            Object value = codec == null ? snapshotCodec.decode(bytes) : store(bytes);
+            ValueObject valueObject = expireTime == CacheSnapshot.NOT_REFRESHABLE ? ValueObject.of(value, destroyTime)
+                    : new ValueObject.Refreshable(value, destroyTime, refreshTime, expireTime);
+            put(key, valueObject);
+            if (destroyTime != -1) {
+                segmentFor(key).schedule(key, destroyTime);
+            }
+            afterWrite(key, valueObject);
+            return true;
+        });
+    }
+
+    private byte[] snapshotValue(ValueObject valueObject, RainbowCacheCodec codec) {
+        Object value = valueObject.getValue();
+        if (value instanceof EncodedValue) {
+            return ((EncodedValue) value).getBytes();
+        }
+        if (value instanceof OffHeapValue) {
+            return offHeapStore.get((OffHeapValue) value);
+        }
+        return codec.encode(value);
+    }
+
+    /**
+     * 设置序列化存储方式, 写入的缓存以序列化结果存放, 读取时反序列化为新对象, 在写入缓存之前调用
+     *
+     * @param codec 序列化方式, 为null时直接存放对象
+     */
+    public void setCodec(RainbowCacheCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * 设置权重计算方式, 在configure之前调用
+     *
+     * @param weigher weigher
+     */
+    public void setWeigher(Weigher weigher) {
+        this.weigher = weigher;
+    }
+
+    /**
+     * 定时清理过期缓存(1s), 逐个分段处理时间轮中到期的桶; 异常时记录日志, 不中断定时任务
+     */
+    private void cleanUpTask() {
+        try {
+            long now = System.currentTimeMillis();
+            for (CacheSegment segment : segments) {
+                segment.advance(now);
+            }
+        } catch (Throwable e) {
+            LOGGER.error("本地缓存过期清理失败", e);
+        }
     }
 
     /**
@@ -46,13 +342,136 @@ public class SimpleCache {
      * @param key key
      */
     public void triggerCleanUp(String key) {
+        ValueObject valueObject = caches.get(key);
+        if (valueObject != null && isExpired(valueObject, System.currentTimeMillis())) {
+            remove(key, valueObject);
+        }
+    }
+
+    /**
+     * 读取缓存, 已过期的缓存直接删除并返回null
+     *
+     * @param key key
+     * @return valueObject
+     */
+    private ValueObject getValueObject(String key) {
         ValueObject valueObject = caches.get(key);
         if (valueObject == null) {
-            return;
+            return null;
         }
+        if (isExpired(valueObject, System.currentTimeMillis())) {
+            remove(key, valueObject);
+            return null;
+        }
+        afterRead(key);
+        return valueObject;
+    }
+
+    private static boolean isExpired(ValueObject valueObject, long now) {
         long destroyTime = valueObject.getDestroyTime();
-        if (destroyTime != -1 && destroyTime <= System.currentTimeMillis()) {
-            caches.remove(key);
+        return destroyTime != -1 && destroyTime <= now;
+    }
+
+    /**
+     * 仅当缓存仍为指定值时删除
+     *
+     * @param key         key
+     * @param valueObject valueObject
+     */
+    private void remove(String key, ValueObject valueObject) {
+        boolean[] removed = new boolean[1];
+        caches.computeIfPresent(key, (k, v) -> {
+            if (v != valueObject) {
+                return v;
+            }
+            index.remove(k);
+            release(v);
+            removed[0] = true;
+            return null;
+        });
+        if (removed[0]) {
+            estimate(key, null, valueObject);
+            metrics.recordExpiration();
+            afterRemove(key);
+        }
+    }
+
+    /**
+     * 写入缓存并维护key索引
+     *
+     * @param key         key
+     * @param valueObject valueObject
+     */
+    private void put(String key, ValueObject valueObject) {
+        ValueObject[] old = new ValueObject[1];
+        caches.compute(key, (k, v) -> {
+            if (v == null) {
+                index.add(k);
+            } else {
+                release(v);
+            }
+            old[0] = v;
+            return valueObject;
+        });
+        estimate(key, valueObject, old[0]);
+    }
+
+    /**
+     * 删除后更新淘汰策略
+     *
+     * @param key key
+     */
+    private void afterRemove(String key) {
+        segmentFor(key).recordRemove(key);
+    }
+
+    /**
+     * 写入后更新淘汰策略
+     *
+     * @param key         key
+     * @param valueObject 写入的缓存
+     */
+    private void afterWrite(String key, ValueObject valueObject) {
+        if (valueObject != null) {
+            evict(segmentFor(key).recordWrite(key, valueObject));
+        }
+    }
+
+    /**
+     * 读取后记录到分段的读缓冲区, 不阻塞
+     *
+     * @param key key
+     */
+    private void afterRead(String key) {
+        segmentFor(key).recordRead(key);
+    }
+
+    /**
+     * 删除被淘汰的缓存, 只有缓存仍为淘汰策略记录的对象时才删除, 期间被重新写入的缓存保留
+     *
+     * @param evicted 被淘汰的key及淘汰策略记录的缓存
+     */
+    private void evict(Map<String, ValueObject> evicted) {
+        if (evicted == null) {
+            return;
+        }
+        for (Map.Entry<String, ValueObject> entry : evicted.entrySet()) {
+            String key = entry.getKey();
+            ValueObject expected = entry.getValue();
+            boolean[] removed = new boolean[1];
+            caches.computeIfPresent(key, (k, v) -> {
+                if (v != expected) {
+                    return v;
+                }
+                index.remove(k);
+                release(v);
+                removed[0] = true;
+                return null;
+            });
+            if (removed[0]) {
+                estimate(key, null, expected);
+                metrics.recordEviction();
+            }
         }
     }
 
@@ -65,13 +484,14 @@ public class SimpleCache {
     }
 
     public void setCache(String key, Object cache) {
-        ValueObject valueObject = new ValueObject(cache, -1L, -1L);
-        this.caches.put(key, valueObject);
+        Object value = encode(cache);
+        ValueObject valueObject = new ValueObject(value);
+        put(key, valueObject);
+        afterWrite(key, valueObject);
     }
 
     /**
      * 设置具有过期时间的缓存
-     * todo time unit unrealized
      *
      * @param key        key
      * @param cache      cache
@@ -80,82 +500,485 @@ public class SimpleCache {
      */
     public void setCache(String key, Object cache, long expiration, TimeUnit timeUnit) {
         long now = System.currentTimeMillis();
-        ValueObject valueObject = new ValueObject(cache, -expiration, now + (expiration * 1000L));
-        this.caches.put(key, valueObject);
+        long destroyTime = now + timeUnit.toMillis(expiration);
+        Object value = encode(cache);
+        ValueObject valueObject = ValueObject.of(value, destroyTime);
+        put(key, valueObject);
+        segmentFor(key).schedule(key, destroyTime);
+        afterWrite(key, valueObject);
+    }
+
+    /**
+     * 写入可异步刷新的缓存, 读取时仍为缓存值本身
+     *
+     * @param key         key
+     * @param cache       cache
+     * @param refreshTime 开始异步刷新的时间点(毫秒), -1为不刷新
+     * @param expireTime  逻辑过期时间点(毫秒), -1为永久有效
+     * @param destroyTime 实际删除的时间点(毫秒), -1为永久有效
+     */
+    void setRefreshable(String key, Object cache, long refreshTime, long expireTime, long destroyTime) {
+        ValueObject valueObject = new ValueObject.Refreshable(encode(cache), destroyTime, refreshTime, expireTime);
+        put(key, valueObject);
+        if (destroyTime != -1) {
+            segmentFor(key).schedule(key, destroyTime);
+        }
+        afterWrite(key, valueObject);
+    }
+
+    /**
+     * 续期可异步刷新的缓存, 沿用已存放的缓存值和刷新时间
+     *
+     * @param key         key
+     * @param expireTime  逻辑过期时间点(毫秒)
+     * @param destroyTime 实际删除的时间点(毫秒)
+     */
+    void renewRefreshable(String key, long expireTime, long destroyTime) {
+        boolean[] renewed = new boolean[1];
+        // 原地更新, 缓存对象不变, 淘汰策略中记录的对象仍然有效
+        caches.computeIfPresent(key, (k, v) -> {
+            if (v instanceof ValueObject.Refreshable) {
+                ((ValueObject.Refreshable) v).renew(expireTime, destroyTime);
+                renewed[0] = true;
+            }
+            return v;
+        });
+        if (renewed[0]) {
+            segmentFor(key).schedule(key, destroyTime);
+        }
+    }
+
+    /**
+     * 读取缓存值及其刷新、过期时间, 其他方式写入的缓存视为不刷新、不过期
+     *
+     * @param key key
+     * @return 缓存不存在时返回null
+     */
+    RefreshableValue getRefreshable(String key) {
+        ValueObject valueObject = getValueObject(key);
+        Object value = valueObject == null ? null : decode(valueObject);
+        if (value == null) {
+            return null;
+        }
+        if (valueObject instanceof ValueObject.Refreshable) {
+            ValueObject.Refreshable refreshable = (ValueObject.Refreshable) valueObject;
+            return new RefreshableValue(value, refreshable.getRefreshTime(), refreshable.getExpireTime());
+        }
+        return new RefreshableValue(value, -1L, -1L);
     }
 
     public Object getCache(String key) {
-        triggerCleanUp(key);
-        ValueObject valueObject = caches.get(key);
-        return valueObject == null ? null : valueObject.getValue();
+        ValueObject valueObject = getValueObject(key);
+        return valueObject == null ? null : decode(valueObject);
     }
 
     public String getCacheToString(String key) {
-        triggerCleanUp(key);
-        ValueObject valueObject = caches.get(key);
-        return valueObject == null ? null : valueObject.getValue().toString();
+        ValueObject valueObject = getValueObject(key);
+        return valueObject == null ? null : decode(valueObject).toString();
     }
 
     public Integer getCacheToInteger(String key) {
-        String obj = getCacheToString(key);
-        return obj == null ? null : Integer.parseInt(obj);
+        Object obj = getCache(key);
+        if (obj == null || obj instanceof Integer) {
+            return (Integer) obj;
+        }
+        return Integer.parseInt(obj.toString());
     }
 
     public Double getCacheToDouble(String key) {
-        String obj = getCacheToString(key);
-        return obj == null ? null : Double.parseDouble(obj);
+        Object obj = getCache(key);
+        if (obj == null || obj instanceof Double) {
+            return (Double) obj;
+        }
+        return Double.parseDouble(obj.toString());
     }
 
     public Float getCacheToFloat(String key) {
-        String obj = getCacheToString(key);
-        return obj == null ? null : Float.parseFloat(obj);
+        Object obj = getCache(key);
+        if (obj == null || obj instanceof Float) {
+            return (Float) obj;
+        }
+        return Float.parseFloat(obj.toString());
     }
 
     public Character getCacheToCharacter(String key) {
-        triggerCleanUp(key);
-        ValueObject valueObject = caches.get(key);
-        return valueObject == null ? null : (Character) valueObject.getValue();
+        ValueObject valueObject = getValueObject(key);
+        return valueObject == null ? null : (Character) decode(valueObject);
     }
 
     public Short getCacheToShort(String key) {
-        String obj = getCacheToString(key);
-        return obj == null ? null : Short.parseShort(obj);
+        Object obj = getCache(key);
+        if (obj == null || obj instanceof Short) {
+            return (Short) obj;
+        }
+        return Short.parseShort(obj.toString());
     }
 
     public Byte getCacheToByte(String key) {
-        String obj = getCacheToString(key);
-        return obj == null ? null : Byte.parseByte(obj);
+        Object obj = getCache(key);
+        if (obj == null || obj instanceof Byte) {
+            return (Byte) obj;
+        }
+        return Byte.parseByte(obj.toString());
     }
 
     public Long getCacheToLong(String key) {
-        String obj = getCacheToString(key);
-        return obj == null ? null : Long.parseLong(obj);
+        Object obj = getCache(key);
+        if (obj == null || obj instanceof Long) {
+            return (Long) obj;
+        }
+        return Long.parseLong(obj.toString());
     }
 
-    public <T> List<T> getCacheToList(String key) {
+    /**
+     * 读取long值, 数值类型直接转换, 其他类型按字符串解析
+     *
+     * @param key          key
+     * @param defaultValue 缓存不存在时返回的值
+     * @return value
+     */
+    public long getLong(String key, long defaultValue) {
+        ValueObject valueObject = getValueObject(key);
+        if (valueObject == null) {
+            return defaultValue;
+        }
+        if (valueObject instanceof LongValueObject) {
+            return ((LongValueObject) valueObject).getLong();
+        }
+        Object obj = decode(valueObject);
+        if (obj == null) {
+            return defaultValue;
+        }
+        return obj instanceof Number ? ((Number) obj).longValue() : Long.parseLong(obj.toString());
+    }
 
-        triggerCleanUp(key);
-        ValueObject valueObject = caches.get(key);
-        return valueObject == null ? null : (List<T>) valueObject.getValue();
+    /**
+     * 读取int值, 数值类型直接转换, 其他类型按字符串解析
+     *
+     * @param key          key
+     * @param defaultValue 缓存不存在时返回的值
+     * @return value
+     */
+    public int getInt(String key, int defaultValue) {
+        ValueObject valueObject = getValueObject(key);
+        if (valueObject == null) {
+            return defaultValue;
+        }
+        if (valueObject instanceof LongValueObject) {
+            return (int) ((LongValueObject) valueObject).getLong();
+        }
+        Object obj = decode(valueObject);
+        if (obj == null) {
+            return defaultValue;
+        }
+        return obj instanceof Number ? ((Number) obj).intValue() : Integer.parseInt(obj.toString());
     }
 
-    public <T> Set<T> getCacheToSet(String key) {
+    /**
+     * 读取short值, 数值类型直接转换, 其他类型按字符串解析
+     *
+     * @param key          key
+     * @param defaultValue 缓存不存在时返回的值
+     * @return value
+     */
+    public short getShort(String key, short defaultValue) {
+        ValueObject valueObject = getValueObject(key);
+        if (valueObject == null) {
+            return defaultValue;
+        }
+        if (valueObject instanceof LongValueObject) {
+            return (short) ((LongValueObject) valueObject).getLong();
+        }
+        Object obj = decode(valueObject);
+        if (obj == null) {
+            return defaultValue;
+        }
+        return obj instanceof Number ? ((Number) obj).shortValue() : Short.parseShort(obj.toString());
+    }
 
-        triggerCleanUp(key);
-        ValueObject valueObject = caches.get(key);
-        return valueObject == null ? null : (Set<T>) valueObject.getValue();
+    /**
+     * 读取byte值, 数值类型直接转换, 其他类型按字符串解析
+     *
+     * @param key          key
+     * @param defaultValue 缓存不存在时返回的值
+     * @return value
+     */
+    public byte getByte(String key, byte defaultValue) {
+        ValueObject valueObject = getValueObject(key);
+        if (valueObject == null) {
+            return defaultValue;
+        }
+        if (valueObject instanceof LongValueObject) {
+            return (byte) ((LongValueObject) valueObject).getLong();
+        }
+        Object obj = decode(valueObject);
+        if (obj == null) {
+            return defaultValue;
+        }
+        return obj instanceof Number ? ((Number) obj).byteValue() : Byte.parseByte(obj.toString());
+    }
+
+    /**
+     * 读取double值, 数值类型直接转换, 其他类型按字符串解析
+     *
+     * @param key          key
+     * @param defaultValue 缓存不存在时返回的值
+     * @return value
+     */
+    public double getDouble(String key, double defaultValue) {
+        ValueObject valueObject = getValueObject(key);
+        if (valueObject == null) {
+            return defaultValue;
+        }
+        if (valueObject instanceof LongValueObject) {
+            return ((LongValueObject) valueObject).getLong();
+        }
+        Object obj = decode(valueObject);
+        if (obj == null) {
+            return defaultValue;
+        }
+        return obj instanceof Number ? ((Number) obj).doubleValue() : Double.parseDouble(obj.toString());
+    }
+
+    /**
+     * 读取float值, 数值类型直接转换, 其他类型按字符串解析
+     *
+     * @param key          key
+     * @param defaultValue 缓存不存在时返回的值
+     * @return value
+     */
+    public float getFloat(String key, float defaultValue) {
+        ValueObject valueObject = getValueObject(key);
+        if (valueObject == null) {
+            return defaultValue;
+        }
+        if (valueObject instanceof LongValueObject) {
+            return ((LongValueObject) valueObject).getLong();
+        }
+        Object obj = decode(valueObject);
+        if (obj == null) {
+            return defaultValue;
+        }
+        return obj instanceof Number ? ((Number) obj).floatValue() : Float.parseFloat(obj.toString());
+    }
+
+    /**
+     * 设置long值, 数值直接保存在缓存项中, 可以通过addAndGet累加
+     *
+     * @param key   key
+     * @param value value
+     */
+    public void setLong(String key, long value) {
+        LongValueObject valueObject = new LongValueObject(value, -1L);
+        put(key, valueObject);
+        afterWrite(key, valueObject);
+    }
+
+    /**
+     * 设置具有过期时间的long值
+     *
+     * @param key        key
+     * @param value      value
+     * @param expiration expiration
+     * @param timeUnit   timeUnit
+     */
+    public void setLong(String key, long value, long expiration, TimeUnit timeUnit) {
+        long destroyTime = System.currentTimeMillis() + timeUnit.toMillis(expiration);
+        LongValueObject valueObject = new LongValueObject(value, destroyTime);
+        put(key, valueObject);
+        segmentFor(key).schedule(key, destroyTime);
+        afterWrite(key, valueObject);
+    }
+
+    /**
+     * 计数加1
+     *
+     * @param key key
+     * @return 加1后的值
+     */
+    public long incrementAndGet(String key) {
+        return addAndGet(key, 1L, -1L, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 原子累加, 计数不存在时从0开始
+     *
+     * @param key   key
+     * @param delta 增量
+     * @return 累加后的值
+     */
+    public long addAndGet(String key, long delta) {
+        return addAndGet(key, delta, -1L, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 原子累加, 计数不存在或已过期时从0开始并设置过期时间, 已存在的计数不续期
+     * <p>
+     * 已经是long值的缓存直接CAS累加, 不加锁也不创建对象, 累加后确认缓存仍为该对象; 其他数值类型或数字字符串转换为long值后累加.
+     *
+     * @param key        key
+     * @param delta      增量
+     * @param expiration 新建计数的有效时间, 小于0为永久有效
+     * @param timeUnit   timeUnit
+     * @return 累加后的值
+     */
+    public long addAndGet(String key, long delta, long expiration, TimeUnit timeUnit) {
+        long now = System.currentTimeMillis();
+        ValueObject current = caches.get(key);
+        if (current instanceof LongValueObject && !isExpired(current, now)) {
+            long value = ((LongValueObject) current).addAndGet(delta);
+            // 累加期间计数被删除或替换时累加落在了已脱离的对象上, 改为在compute中重新累加
+            if (caches.get(key) == current) {
+                afterRead(key);
+                return value;
+            }
+        }
+
+        long[] result = new long[1];
+        ValueObject[] replaced = new ValueObject[1];
+        boolean[] created = new boolean[1];
+        ValueObject valueObject = caches.compute(key, (k, v) -> {
+            boolean alive = v != null && !isExpired(v, now);
+            if (alive && v instanceof LongValueObject) {
+                result[0] = ((LongValueObject) v).addAndGet(delta);
+                return v;
+            }
+            long initial = 0L;
+            long destroyTime = expiration < 0 ? -1L : now + timeUnit.toMillis(expiration);
+            if (alive) {
+                // 沿用原缓存的值和过期时间
+                Object old = decode(v);
+                initial = old instanceof Number ? ((Number) old).longValue() : Long.parseLong(String.valueOf(old));
+                destroyTime = v.getDestroyTime();
+            }
+            if (v == null) {
+                index.add(k);
+            } else {
+                release(v);
+            }
+            result[0] = initial + delta;
+            replaced[0] = v;
+            created[0] = true;
+            return new LongValueObject(result[0], destroyTime);
+        });
+        if (created[0]) {
+            estimate(key, valueObject, replaced[0]);
+            if (valueObject.getDestroyTime() != -1) {
+                segmentFor(key).schedule(key, valueObject.getDestroyTime());
+            }
+            afterWrite(key, valueObject);
+        } else {
+            afterRead(key);
+        }
+        return result[0];
+    }
+
+    public <T> List<T> getCacheToList(String key) {
+        ValueObject valueObject = getValueObject(key);
+        return valueObject == null ? null : (List<T>) decode(valueObject);
+    }
+
+    public <T> Set<T> getCacheToSet(String key) {
+        ValueObject valueObject = getValueObject(key);
+        return valueObject == null ? null : (Set<T>) decode(valueObject);
     }
 
     public <T, E> Map<T, E> getCacheToMap(String key) {
-        triggerCleanUp(key);
-        ValueObject valueObject = caches.get(key);
-        return valueObject == null ? null : (Map<T, E>) valueObject.getValue();
+        ValueObject valueObject = getValueObject(key);
+        return valueObject == null ? null : (Map<T, E>) decode(valueObject);
     }
 
     public Boolean getCacheExist(String key) {
-        triggerCleanUp(key);
-        ValueObject valueObject = caches.get(key);
-        return valueObject != null && valueObject.getValue() != null;
+        ValueObject valueObject = getValueObject(key);
+        return valueObject != null && decode(valueObject) != null;
+    }
+
+    private Object encode(Object cache) {
+        RainbowCacheCodec codec = this.codec;
+        if (codec == null) {
+            return cache;
+        }
+        return store(codec.encode(cache));
+    }
+
+    /**
+     * 存放序列化结果, 优先放入堆外存储
+     *
+     * @param bytes bytes
+     * @return 缓存值
+     */
+    private Object store(byte[] bytes) {
+        OffHeapStore offHeapStore = this.offHeapStore;
+        if (offHeapStore != null) {
+            OffHeapValue value = offHeapStore.put(bytes);
+            // 超过最大规格或堆外容量已满时存放在堆内
+            if (value != null) {
+                return value;
+            }
+        }
+        return new EncodedValue(bytes);
+    }
+
+    private Object decode(ValueObject valueObject) {
+        Object value = valueObject.getValue();
+        if (value instanceof EncodedValue) {
+            return codec.decode(((EncodedValue) value).getBytes());
+        }
+        if (value instanceof OffHeapValue) {
+            byte[] bytes = offHeapStore.get((OffHeapValue) value);
+            return bytes == null ? null : codec.decode(bytes);
+        }
+        return value;
+    }
+
+    /**
+     * 释放缓存值占用的堆外内存
+     *
+     * @param valueObject valueObject
+     */
+    private void release(ValueObject valueObject) {
+        Object value = valueObject.getValue();
+        if (value instanceof OffHeapValue) {
+            offHeapStore.remove((OffHeapValue) value);
+        }
+    }
+
+    /**
+     * 开启内存估算, 已有缓存一次性计入; 由统计导出注册时调用, 未开启时写入和删除不计算权重
+     */
+    public synchronized void enableEstimatedBytes() {
+        if (estimating) {
+            return;
+        }
+        estimating = true;
+        long bytes = 0L;
+        for (Map.Entry<String, ValueObject> entry : caches.entrySet()) {
+            bytes += Weigher.estimated().weigh(entry.getKey(), entry.getValue().getValue());
+        }
+        metrics.addEstimatedBytes(bytes);
+    }
+
+    /**
+     * 更新估算内存, 在compute之外调用
+     *
+     * @param key     key
+     * @param added   写入的缓存
+     * @param removed 被替换或删除的缓存
+     */
+    private void estimate(String key, ValueObject added, ValueObject removed) {
+        if (!estimating) {
+            return;
+        }
+        long bytes = 0L;
+        if (added != null) {
+            bytes += Weigher.estimated().weigh(key, added.getValue());
+        }
+        if (removed != null) {
+            bytes -= Weigher.estimated().weigh(key, removed.getValue());
+        }
+        if (bytes != 0L) {
+            metrics.addEstimatedBytes(bytes);
+        }
     }
 
     public Set<String> keys() {
@@ -166,23 +989,39 @@ public class SimpleCache {
         return caches.size();
     }
 
+    /**
+     * 按前缀查找key, 开销与匹配的key数量相关
+     *
+     * @param key 前缀
+     * @return keys
+     */
     public Set<String> keys(String key) {
-
         triggerCleanUp(key);
-        Set<String> keys = new CopyOnWriteArraySet<>();
-        caches.keySet().parallelStream().forEach(str -> {
-            if (str.startsWith(key)) {
-                keys.add(str);
+        Set<String> keys = new HashSet<>();
+        for (String str : index.tailSet(key, true)) {
+            if (!str.startsWith(key)) {
+                break;
             }
-        });
+            keys.add(str);
+        }
         return keys;
     }
 
     public void delete(String key) {
-        caches.remove(key);
+        ValueObject[] old = new ValueObject[1];
+        caches.computeIfPresent(key, (k, v) -> {
+            index.remove(k);
+            release(v);
+            old[0] = v;
+            return null;
+        });
+        estimate(key, null, old[0]);
+        afterRemove(key);
     }
 
     public void delete(Set<String> set) {
-        set.parallelStream().forEach(this::delete);
+        for (String key : set) {
+            delete(key);
+        }
     }
 }
@@ -0,0 +1,64 @@
+package cn.threeoranges.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 同一个key同一时刻只执行一次加载, 并发的调用者等待并共享其结果
+ *
+ * @author: 李小熊
+ **/
+final class SingleFlight {
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * 加载数据
+     *
+     * @param key     key
+     * @param timeout 等待其他调用者加载的超时时间(毫秒), 超时后自行加载, -1为一直等待
+     * @param loader  loader
+     * @return value
+     * @throws Throwable loader抛出的异常
+     */
+    Object load(String key, long timeout, Loader loader) throws Throwable {
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> running = calls.putIfAbsent(key, call);
+        if (running != null) {
+            return await(running, timeout, loader);
+        }
+        try {
+            Object value = loader.load();
+            call.complete(value);
+            return value;
+        } catch (Throwable e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, call);
+        }
+    }
+
+    private Object await(CompletableFuture<Object> running, long timeout, Loader loader) throws Throwable {
+        try {
+            return timeout < 0 ? running.get() : running.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (TimeoutException e) {
+            return loader.load();
+        }
+    }
+
+    @FunctionalInterface
+    interface Loader {
+        /**
+         * 加载数据
+         *
+         * @return value
+         * @throws Throwable throwable
+         */
+        Object load() throws Throwable;
+    }
+}
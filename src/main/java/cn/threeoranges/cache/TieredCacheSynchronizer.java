@@ -0,0 +1,94 @@
+package cn.threeoranges.cache;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * TIERED模式下通过redis发布订阅同步各节点的本地一级缓存
+ * <p>
+ * 消息格式: 节点id|操作|key, 操作K为删除单个key, P为按前缀删除.
+ * 节点忽略自己发出的消息.
+ *
+ * @author: 李小熊
+ **/
+public class TieredCacheSynchronizer implements MessageListener {
+    private static final String CHANNEL = "rainbowCache:invalidate";
+    private static final String KEY = "K";
+    private static final String PREFIX = "P";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final SimpleCache simpleCache = SimpleCache.simpleCache();
+    private RedisMessageListenerContainer container;
+
+    public TieredCacheSynchronizer(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 开始订阅
+     */
+    public void start() {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisTemplate.getConnectionFactory());
+        container.addMessageListener(this, new ChannelTopic(CHANNEL));
+        container.afterPropertiesSet();
+        container.start();
+        this.container = container;
+    }
+
+    /**
+     * 停止订阅
+     *
+     * @throws Exception exception
+     */
+    public void stop() throws Exception {
+        if (container != null) {
+            container.destroy();
+        }
+    }
+
+    /**
+     * 通知其他节点删除key
+     *
+     * @param key key
+     */
+    public void publishEvict(String key) {
+        redisTemplate.convertAndSend(CHANNEL, nodeId + "|" + KEY + "|" + key);
+    }
+
+    /**
+     * 通知其他节点按前缀删除
+     *
+     * @param prefix prefix
+     */
+    public void publishClear(String prefix) {
+        redisTemplate.convertAndSend(CHANNEL, nodeId + "|" + PREFIX + "|" + prefix);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (body == null) {
+            return;
+        }
+        String[] parts = body.toString().split("\\|", 3);
+        if (parts.length != 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        if (KEY.equals(parts[1])) {
+            simpleCache.delete(parts[2]);
+            return;
+        }
+        Set<String> keys = simpleCache.keys(parts[2]);
+        if (keys != null && keys.size() > 0) {
+            simpleCache.delete(keys);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package cn.threeoranges.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分层时间轮, 按过期时间点(ValueObject.destroyTime)把key放入对应的桶中
+ * <p>
+ * 各层跨度约为 1秒 / 1分钟 / 1小时 / 1天 / 6天, 时间推进时只处理到期的桶:
+ * 已过期的缓存被删除, 未过期的(续期过或落在高层的)重新放入更低层的桶.
+ * 清理开销与到期缓存数量相关, 与缓存总量无关.
+ *
+ * @author: 李小熊
+ **/
+final class TimerWheel {
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    private static final long[] SPANS = {
+            1L << 10,
+            1L << 16,
+            1L << 22,
+            1L << 27,
+            4L << 27,
+    };
+    private static final int[] SHIFT = {
+            Long.numberOfTrailingZeros(SPANS[0]),
+            Long.numberOfTrailingZeros(SPANS[1]),
+            Long.numberOfTrailingZeros(SPANS[2]),
+            Long.numberOfTrailingZeros(SPANS[3]),
+            Long.numberOfTrailingZeros(SPANS[4]),
+    };
+
+    private final Set<String>[][] wheel;
+    private final Expirer expirer;
+    /**
+     * 上次推进到的时间点(毫秒)
+     */
+    private volatile long time;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(Expirer expirer, long time) {
+        this.expirer = expirer;
+        this.time = time;
+        this.wheel = (Set<String>[][]) new Set<?>[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = (Set<String>[]) new Set<?>[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                wheel[i][j] = ConcurrentHashMap.newKeySet();
+            }
+        }
+    }
+
+    /**
+     * 登记过期时间点
+     *
+     * @param key         key
+     * @param destroyTime 过期时间点(毫秒)
+     */
+    void schedule(String key, long destroyTime) {
+        long now = this.time;
+        long deadline = Math.max(destroyTime, now);
+        long duration = deadline - now;
+        for (int i = 0; i < BUCKETS.length - 1; i++) {
+            if (duration < SPANS[i + 1]) {
+                int index = (int) ((deadline >>> SHIFT[i]) & (BUCKETS[i] - 1));
+                wheel[i][index].add(key);
+                return;
+            }
+        }
+        wheel[BUCKETS.length - 1][0].add(key);
+    }
+
+    /**
+     * 推进时间轮, 仅由单个清理线程调用
+     *
+     * @param now 当前时间(毫秒)
+     */
+    synchronized void advance(long now) {
+        long previous = this.time;
+        if (now <= previous) {
+            return;
+        }
+        this.time = now;
+        List<String> reschedule = new ArrayList<>();
+        for (int i = 0; i < BUCKETS.length; i++) {
+            long previousTicks = previous >>> SHIFT[i];
+            long currentTicks = now >>> SHIFT[i];
+            if (currentTicks == previousTicks && i > 0) {
+                break;
+            }
+            expire(i, previousTicks, currentTicks, now, reschedule);
+        }
+        for (String key : reschedule) {
+            long destroyTime = expirer.destroyTime(key);
+            if (destroyTime > 0) {
+                schedule(key, destroyTime);
+            }
+        }
+    }
+
+    private void expire(int level, long previousTicks, long currentTicks, long now, List<String> reschedule) {
+        Set<String>[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        long count = Math.min(currentTicks - previousTicks + 1, buckets.length);
+        for (long ticks = previousTicks; ticks < previousTicks + count; ticks++) {
+            Iterator<String> iterator = buckets[(int) (ticks & mask)].iterator();
+            while (iterator.hasNext()) {
+                String key = iterator.next();
+                iterator.remove();
+                if (!expirer.expire(key, now)) {
+                    reschedule.add(key);
+                }
+            }
+        }
+    }
+
+    interface Expirer {
+        /**
+         * 删除已过期的缓存
+         *
+         * @param key key
+         * @param now 当前时间
+         * @return 缓存已删除或不存在返回true, 未到期返回false
+         */
+        boolean expire(String key, long now);
+
+        /**
+         * 获取缓存过期时间点
+         *
+         * @param key key
+         * @return 过期时间点, 缓存不存在或永久有效时返回-1
+         */
+        long destroyTime(String key);
+    }
+}
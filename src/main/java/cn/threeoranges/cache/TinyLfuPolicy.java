@@ -0,0 +1,283 @@
+package cn.threeoranges.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * W-TinyLFU淘汰策略
+ * <p>
+ * 新写入的缓存先进入窗口LRU(1%容量), 被挤出窗口后进入主区的试用段;
+ * 主区满时用频率估算比较试用段最新的候选者和最旧的受害者, 淘汰频率较低的一方.
+ * 试用段中再次被访问的缓存晋升到保护段(主区80%容量).
+ * <p>
+ * 非线程安全, 由所属的CacheSegment加锁访问.
+ *
+ * @author: 李小熊
+ **/
+final class TinyLfuPolicy {
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final Map<String, Node> data = new HashMap<>();
+    private final AccessOrder window = new AccessOrder();
+    private final AccessOrder probation = new AccessOrder();
+    private final AccessOrder protectedOrder = new AccessOrder();
+
+    /**
+     * 最大缓存个数, -1为不限制
+     */
+    private final long maximumSize;
+    /**
+     * 最大缓存权重, -1为不限制
+     */
+    private final long maximumWeight;
+    private final Weigher weigher;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    private long weightedSize;
+    private long windowWeight;
+    private long protectedWeight;
+    private long sketchCapacity;
+
+    TinyLfuPolicy(long maximumSize, long maximumWeight, Weigher weigher) {
+        this.maximumSize = maximumSize > 0 ? maximumSize : -1L;
+        this.maximumWeight = maximumWeight > 0 ? maximumWeight : -1L;
+        this.weigher = this.maximumWeight > 0 ? weigher : Weigher.singleton();
+        long capacity = this.maximumWeight > 0 ? this.maximumWeight : this.maximumSize;
+        this.windowMaximum = Math.max(1L, capacity / 100);
+        this.protectedMaximum = (long) ((capacity - windowMaximum) * 0.8d);
+    }
+
+    /**
+     * 计算缓存权重, 不需要加锁
+     *
+     * @param key   key
+     * @param value value
+     * @return 权重
+     */
+    int weigh(String key, Object value) {
+        return Math.max(0, weigher.weigh(key, value));
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param key         key
+     * @param weight      权重
+     * @param valueObject 写入的缓存, 淘汰时只删除仍为该对象的缓存
+     * @return 被淘汰的key及记录的缓存, 没有淘汰时返回null
+     */
+    Map<String, ValueObject> onWrite(String key, int weight, ValueObject valueObject) {
+        sketch.increment(key);
+        Node node = data.get(key);
+        if (node == null) {
+            node = new Node(key);
+            data.put(key, node);
+            if (data.size() > sketchCapacity) {
+                sketchCapacity = Math.max(16L, 2L * data.size());
+                sketch.ensureCapacity(sketchCapacity);
+            }
+            node.weight = weight;
+            node.valueObject = valueObject;
+            node.queue = WINDOW;
+            window.add(node);
+            windowWeight += weight;
+            weightedSize += weight;
+        } else {
+            node.valueObject = valueObject;
+            updateWeight(node, weight);
+            onAccess(node);
+        }
+        return evict();
+    }
+
+    /**
+     * 更新记录的缓存, 不计为访问
+     *
+     * @param key         key
+     * @param valueObject 当前缓存
+     */
+    void onReplace(String key, ValueObject valueObject) {
+        Node node = data.get(key);
+        if (node != null) {
+            node.valueObject = valueObject;
+        }
+    }
+
+    /**
+     * 读取缓存
+     *
+     * @param key key
+     */
+    void onRead(String key) {
+        sketch.increment(key);
+        Node node = data.get(key);
+        if (node != null) {
+            onAccess(node);
+        }
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param key key
+     */
+    void onRemove(String key) {
+        Node node = data.remove(key);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    private void onAccess(Node node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToTail(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedOrder.add(node);
+                protectedWeight += node.weight;
+                // 保护段超出容量时将最旧的降级到试用段
+                while (protectedWeight > protectedMaximum && protectedOrder.head != null) {
+                    Node demoted = protectedOrder.head;
+                    protectedOrder.remove(demoted);
+                    protectedWeight -= demoted.weight;
+                    demoted.queue = PROBATION;
+                    probation.add(demoted);
+                }
+                break;
+            default:
+                protectedOrder.moveToTail(node);
+                break;
+        }
+    }
+
+    private void updateWeight(Node node, int weight) {
+        int delta = weight - node.weight;
+        node.weight = weight;
+        weightedSize += delta;
+        if (node.queue == WINDOW) {
+            windowWeight += delta;
+        } else if (node.queue == PROTECTED) {
+            protectedWeight += delta;
+        }
+    }
+
+    private Map<String, ValueObject> evict() {
+        // 窗口溢出的缓存进入试用段成为候选者
+        while (windowWeight > windowMaximum && window.head != null) {
+            Node node = window.head;
+            window.remove(node);
+            windowWeight -= node.weight;
+            node.queue = PROBATION;
+            probation.add(node);
+        }
+
+        Map<String, ValueObject> evicted = null;
+        while (overflow()) {
+            Node victim;
+            if (probation.head != null) {
+                victim = probation.head;
+                Node candidate = probation.tail;
+                if (candidate != victim && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                    victim = candidate;
+                }
+            } else if (protectedOrder.head != null) {
+                victim = protectedOrder.head;
+            } else {
+                victim = window.head;
+            }
+            data.remove(victim.key);
+            unlink(victim);
+            if (evicted == null) {
+                evicted = new LinkedHashMap<>();
+            }
+            evicted.put(victim.key, victim.valueObject);
+        }
+        return evicted;
+    }
+
+    private boolean overflow() {
+        if (data.isEmpty()) {
+            return false;
+        }
+        return (maximumSize > 0 && data.size() > maximumSize) || (maximumWeight > 0 && weightedSize > maximumWeight);
+    }
+
+    private void unlink(Node node) {
+        weightedSize -= node.weight;
+        switch (node.queue) {
+            case WINDOW:
+                window.remove(node);
+                windowWeight -= node.weight;
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            default:
+                protectedOrder.remove(node);
+                protectedWeight -= node.weight;
+                break;
+        }
+    }
+
+    private static final class Node {
+        private final String key;
+        private ValueObject valueObject;
+        private int weight;
+        private byte queue;
+        private Node prev;
+        private Node next;
+
+        private Node(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * 访问顺序链表, head最旧, tail最新
+     */
+    private static final class AccessOrder {
+        private Node head;
+        private Node tail;
+
+        private void add(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        private void remove(Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        private void moveToTail(Node node) {
+            if (tail != node) {
+                remove(node);
+                add(node);
+            }
+        }
+    }
+}
@@ -3,41 +3,108 @@ package cn.threeoranges.cache;
 import java.io.Serializable;
 
 /**
+ * 永久有效的缓存, 只保存缓存值; 具有过期时间的缓存使用子类保存过期时间点
+ *
  * @author: 李小熊
  * @date: 2021/3/10 5:09 下午
  **/
 public class ValueObject implements Serializable {
     private static final long serialVersionUID = -3192714094176034587L;
-    /**
-     * 缓存有效时间(默认：秒)
-     */
-    private Long expiration;
     /**
      * 缓存值
      */
-    private Object value;
-    /**
-     * 缓存过期时间点
-     */
-    private Long destroyTime;
-
-    private ValueObject(){}
+    private final Object value;
 
-    ValueObject(Object value, Long expiration, Long destroyTime) {
+    ValueObject(Object value) {
         this.value = value;
-        this.expiration = expiration;
-        this.destroyTime = destroyTime;
     }
 
-    public Long getExpiration() {
-        return expiration;
+    /**
+     * 创建缓存项
+     *
+     * @param value       value
+     * @param destroyTime 过期时间点(毫秒), -1为永久有效
+     * @return valueObject
+     */
+    static ValueObject of(Object value, long destroyTime) {
+        return destroyTime == -1L ? new ValueObject(value) : new Expiring(value, destroyTime);
     }
 
     public Object getValue() {
         return value;
     }
 
-    public Long getDestroyTime() {
-        return destroyTime;
+    /**
+     * 缓存过期时间点
+     *
+     * @return 过期时间点(毫秒), -1为永久有效
+     */
+    public long getDestroyTime() {
+        return -1L;
+    }
+
+    /**
+     * 具有过期时间的缓存
+     */
+    static final class Expiring extends ValueObject {
+        private static final long serialVersionUID = 6245916312081329431L;
+        private final long destroyTime;
+
+        private Expiring(Object value, long destroyTime) {
+            super(value);
+            this.destroyTime = destroyTime;
+        }
+
+        @Override
+        public long getDestroyTime() {
+            return destroyTime;
+        }
+    }
+
+    /**
+     * 开启异步刷新或过期后仍可使用旧值的缓存, destroyTime延长到旧值可用窗口结束, 逻辑上的刷新和过期时间记录在这里
+     */
+    static final class Refreshable extends ValueObject {
+        private static final long serialVersionUID = -5528179406337915640L;
+        private volatile long destroyTime;
+        /**
+         * 开始异步刷新的时间点(毫秒), -1为不刷新
+         */
+        private final long refreshTime;
+        /**
+         * 过期时间点(毫秒), -1为永久有效
+         */
+        private volatile long expireTime;
+
+        Refreshable(Object value, long destroyTime, long refreshTime, long expireTime) {
+            super(value);
+            this.destroyTime = destroyTime;
+            this.refreshTime = refreshTime;
+            this.expireTime = expireTime;
+        }
+
+        @Override
+        public long getDestroyTime() {
+            return destroyTime;
+        }
+
+        long getRefreshTime() {
+            return refreshTime;
+        }
+
+        long getExpireTime() {
+            return expireTime;
+        }
+
+        /**
+         * 续期, 在map的compute中调用
+         *
+         * @param expireTime  逻辑过期时间点(毫秒)
+         * @param destroyTime 实际删除的时间点(毫秒)
+         */
+        void renew(long expireTime, long destroyTime) {
+            this.expireTime = expireTime;
+            this.destroyTime = destroyTime;
+        }
     }
 }
@@ -0,0 +1,69 @@
+package cn.threeoranges.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 缓存权重计算, 配合 rainbow.cache.maximum-weight 使用
+ *
+ * @author: 李小熊
+ **/
+@FunctionalInterface
+public interface Weigher {
+
+    /**
+     * 计算缓存权重
+     *
+     * @param key   key
+     * @param value value
+     * @return 非负权重
+     */
+    int weigh(String key, Object value);
+
+    /**
+     * 每个缓存权重为1
+     *
+     * @return weigher
+     */
+    static Weigher singleton() {
+        return (key, value) -> 1;
+    }
+
+    /**
+     * 粗略估算key和value占用的堆内存字节数
+     *
+     * @return weigher
+     */
+    static Weigher estimated() {
+        return (key, value) -> (int) Math.min(Integer.MAX_VALUE, 64L + estimate(key) + estimate(value));
+    }
+
+    static long estimate(Object value) {
+        if (value == null) {
+            return 0L;
+        }
+        if (value instanceof CharSequence) {
+            return 40L + 2L * ((CharSequence) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16L + ((byte[]) value).length;
+        }
+        if (value instanceof EncodedValue) {
+            return 32L + ((EncodedValue) value).getBytes().length;
+        }
+        if (value instanceof OffHeapValue) {
+            return 32L;
+        }
+        if (value instanceof Collection) {
+            long size = 0L;
+            for (Object element : (Collection<?>) value) {
+                size += 8L + (element instanceof CharSequence ? estimate(element) : 16L);
+            }
+            return 40L + size;
+        }
+        if (value instanceof Map) {
+            return 48L + 48L * ((Map<?, ?>) value).size();
+        }
+        return 16L;
+    }
+}
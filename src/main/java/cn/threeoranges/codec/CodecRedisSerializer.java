@@ -0,0 +1,38 @@
+package cn.threeoranges.codec;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 使用RainbowCacheCodec的redis序列化
+ *
+ * @author: 李小熊
+ **/
+public class CodecRedisSerializer implements RedisSerializer<Object> {
+    private final RainbowCacheCodec codec;
+
+    public CodecRedisSerializer(RainbowCacheCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        try {
+            return codec.encode(value);
+        } catch (RuntimeException e) {
+            throw new SerializationException("Cannot serialize", e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            return codec.decode(bytes);
+        } catch (RuntimeException e) {
+            throw new SerializationException("Cannot deserialize", e);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package cn.threeoranges.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 紧凑二进制序列化
+ * <p>
+ * 每个值以一个字节的类型标记开头, 整数使用zigzag变长编码, 字符串使用UTF-8;
+ * ArrayList/HashSet/HashMap及其有序子类逐个元素编码, 其他类型回退到jdk序列化.
+ *
+ * @author: 李小熊
+ **/
+public class CompactCacheCodec implements RainbowCacheCodec {
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte SHORT = 6;
+    private static final byte BYTE = 7;
+    private static final byte TRUE = 8;
+    private static final byte FALSE = 9;
+    private static final byte CHARACTER = 10;
+    private static final byte BYTES = 11;
+    private static final byte LIST = 12;
+    private static final byte SET = 13;
+    private static final byte MAP = 14;
+    private static final byte JAVA = 15;
+
+    private final JdkCacheCodec jdkCodec = new JdkCacheCodec();
+
+    @Override
+    public byte[] encode(Object value) {
+        Output output = new Output(64);
+        write(output, value);
+        return output.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] bytes) {
+        return read(new Input(bytes));
+    }
+
+    private void write(Output output, Object value) {
+        if (value == null) {
+            output.writeByte(NULL);
+        } else if (value instanceof String) {
+            output.writeByte(STRING);
+            output.writeString((String) value);
+        } else if (value instanceof Integer) {
+            output.writeByte(INTEGER);
+            output.writeVarLong((Integer) value);
+        } else if (value instanceof Long) {
+            output.writeByte(LONG);
+            output.writeVarLong((Long) value);
+        } else if (value instanceof Double) {
+            output.writeByte(DOUBLE);
+            output.writeFixedLong(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof Float) {
+            output.writeByte(FLOAT);
+            output.writeVarLong(Float.floatToRawIntBits((Float) value));
+        } else if (value instanceof Short) {
+            output.writeByte(SHORT);
+            output.writeVarLong((Short) value);
+        } else if (value instanceof Byte) {
+            output.writeByte(BYTE);
+            output.writeByte((Byte) value);
+        } else if (value instanceof Boolean) {
+            output.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Character) {
+            output.writeByte(CHARACTER);
+            output.writeVarLong((Character) value);
+        } else if (value instanceof byte[]) {
+            output.writeByte(BYTES);
+            output.writeBytes((byte[]) value);
+        } else if (value.getClass() == ArrayList.class) {
+            output.writeByte(LIST);
+            writeElements(output, (Collection<?>) value);
+        } else if (value.getClass() == HashSet.class || value.getClass() == LinkedHashSet.class) {
+            output.writeByte(SET);
+            writeElements(output, (Collection<?>) value);
+        } else if (value.getClass() == HashMap.class || value.getClass() == LinkedHashMap.class) {
+            output.writeByte(MAP);
+            Map<?, ?> map = (Map<?, ?>) value;
+            output.writeVarLong(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(output, entry.getKey());
+                write(output, entry.getValue());
+            }
+        } else {
+            output.writeByte(JAVA);
+            output.writeBytes(jdkCodec.encode(value));
+        }
+    }
+
+    private void writeElements(Output output, Collection<?> collection) {
+        output.writeVarLong(collection.size());
+        for (Object element : collection) {
+            write(output, element);
+        }
+    }
+
+    private Object read(Input input) {
+        byte tag = input.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return input.readString();
+            case INTEGER:
+                return (int) input.readVarLong();
+            case LONG:
+                return input.readVarLong();
+            case DOUBLE:
+                return Double.longBitsToDouble(input.readFixedLong());
+            case FLOAT:
+                return Float.intBitsToFloat((int) input.readVarLong());
+            case SHORT:
+                return (short) input.readVarLong();
+            case BYTE:
+                return input.readByte();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case CHARACTER:
+                return (char) input.readVarLong();
+            case BYTES:
+                return input.readBytes();
+            case LIST: {
+                int size = (int) input.readVarLong();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(read(input));
+                }
+                return list;
+            }
+            case SET: {
+                int size = (int) input.readVarLong();
+                Set<Object> set = new LinkedHashSet<>(Math.max(16, (int) (size / 0.75f) + 1));
+                for (int i = 0; i < size; i++) {
+                    set.add(read(input));
+                }
+                return set;
+            }
+            case MAP: {
+                int size = (int) input.readVarLong();
+                Map<Object, Object> map = new LinkedHashMap<>(Math.max(16, (int) (size / 0.75f) + 1));
+                for (int i = 0; i < size; i++) {
+                    map.put(read(input), read(input));
+                }
+                return map;
+            }
+            case JAVA: {
+                int length = (int) input.readVarLong();
+                int offset = input.skip(length);
+                return jdkCodec.decode(input.bytes, offset, length);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown cache value type: " + tag);
+        }
+    }
+
+    /**
+     * 可扩容的写缓冲
+     */
+    private static final class Output {
+        private byte[] buffer;
+        private int position;
+
+        private Output(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        private void ensure(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + length));
+            }
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeVarLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[position++] = (byte) zigzag;
+        }
+
+        private void writeFixedLong(long value) {
+            ensure(8);
+            for (int i = 56; i >= 0; i -= 8) {
+                buffer[position++] = (byte) (value >>> i);
+            }
+        }
+
+        private void writeBytes(byte[] bytes) {
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void writeString(String value) {
+            writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    /**
+     * 读缓冲
+     */
+    private static final class Input {
+        private final byte[] bytes;
+        private int position;
+
+        private Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private byte readByte() {
+            return bytes[position++];
+        }
+
+        private long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        private long readFixedLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        private int skip(int length) {
+            int offset = position;
+            position += length;
+            return offset;
+        }
+
+        private byte[] readBytes() {
+            int length = (int) readVarLong();
+            return Arrays.copyOfRange(bytes, skip(length), position);
+        }
+
+        private String readString() {
+            int length = (int) readVarLong();
+            return new String(bytes, skip(length), length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package cn.threeoranges.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 超过阈值的序列化结果使用deflate压缩
+ * <p>
+ * 第一个字节为压缩标记, 压缩后的数据紧跟4个字节的原始长度.
+ *
+ * @author: 李小熊
+ **/
+public class CompressionCacheCodec implements RainbowCacheCodec {
+    private static final byte RAW = 0;
+    private static final byte DEFLATE = 1;
+
+    private final RainbowCacheCodec delegate;
+    private final int threshold;
+
+    public CompressionCacheCodec(RainbowCacheCodec delegate, int threshold) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        byte[] bytes = delegate.encode(value);
+        if (bytes.length >= threshold) {
+            byte[] compressed = deflate(bytes);
+            if (compressed.length < bytes.length) {
+                return compressed;
+            }
+        }
+        byte[] raw = new byte[bytes.length + 1];
+        raw[0] = RAW;
+        System.arraycopy(bytes, 0, raw, 1, bytes.length);
+        return raw;
+    }
+
+    @Override
+    public Object decode(byte[] bytes) {
+        if (bytes[0] == RAW) {
+            return delegate.decode(Arrays.copyOfRange(bytes, 1, bytes.length));
+        }
+        return delegate.decode(inflate(bytes));
+    }
+
+    @Override
+    public String id() {
+        return getClass().getName() + "(" + delegate.id() + ", threshold=" + threshold + ")";
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 5);
+            out.write(DEFLATE);
+            out.write(bytes.length >>> 24);
+            out.write(bytes.length >>> 16);
+            out.write(bytes.length >>> 8);
+            out.write(bytes.length);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) {
+        int length = ((bytes[1] & 0xFF) << 24) | ((bytes[2] & 0xFF) << 16) | ((bytes[3] & 0xFF) << 8) | (bytes[4] & 0xFF);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, 5, bytes.length - 5);
+            byte[] result = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                offset += inflater.inflate(result, offset, length - offset);
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Cannot decompress cache value", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package cn.threeoranges.codec;
+
+import org.springframework.core.ConfigurableObjectInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/**
+ * jdk序列化
+ *
+ * @author: 李小熊
+ **/
+public class JdkCacheCodec implements RainbowCacheCodec {
+
+    @Override
+    public byte[] encode(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream stream = new ObjectOutputStream(out)) {
+            stream.writeObject(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot serialize " + value.getClass().getName(), e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] bytes) {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    Object decode(byte[] bytes, int offset, int length) {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        try (ConfigurableObjectInputStream stream = new ConfigurableObjectInputStream(
+                new ByteArrayInputStream(bytes, offset, length), classLoader)) {
+            return stream.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalArgumentException("Cannot deserialize cache value", e);
+        }
+    }
+}
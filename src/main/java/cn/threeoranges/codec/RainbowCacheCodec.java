@@ -0,0 +1,58 @@
+package cn.threeoranges.codec;
+
+import cn.threeoranges.properties.RainbowCacheProperties;
+import cn.threeoranges.properties.enums.RainbowCacheCodecEnum;
+
+/**
+ * 缓存值序列化, 可以声明该类型的bean替换内置实现
+ *
+ * @author: 李小熊
+ **/
+public interface RainbowCacheCodec {
+
+    /**
+     * 序列化
+     *
+     * @param value value
+     * @return bytes
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 反序列化
+     *
+     * @param bytes bytes
+     * @return value
+     */
+    Object decode(byte[] bytes);
+
+    /**
+     * 序列化方式标识, 快照恢复时标识不一致则放弃; 包装其他序列化方式或带有参数时应包含这些信息
+     *
+     * @return id
+     */
+    default String id() {
+        return getClass().getName();
+    }
+
+    /**
+     * 按配置创建序列化方式
+     *
+     * @param properties properties
+     * @param custom     自定义序列化, 可以为null
+     * @return codec, 使用RedisTemplate自身序列化时返回null
+     */
+    static RainbowCacheCodec create(RainbowCacheProperties properties, RainbowCacheCodec custom) {
+        RainbowCacheCodec codec = custom;
+        if (codec == null && RainbowCacheCodecEnum.JDK.equals(properties.getCodec())) {
+            codec = new JdkCacheCodec();
+        }
+        if (codec == null && RainbowCacheCodecEnum.COMPACT.equals(properties.getCodec())) {
+            codec = new CompactCacheCodec();
+        }
+        if (codec != null && properties.getCompressThreshold() >= 0) {
+            codec = new CompressionCacheCodec(codec, properties.getCompressThreshold());
+        }
+        return codec;
+    }
+}
@@ -0,0 +1,535 @@
+package cn.threeoranges.lock;
+
+import cn.threeoranges.metrics.LockStats;
+import cn.threeoranges.thread.executor.RainbowExecutor;
+import cn.threeoranges.thread.pool.WatchDogThreadPool;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分布式锁
+ * <p>
+ * 加锁时写入调用者独有的token, 解锁时通过lua脚本比较token后删除并发布解锁消息.
+ * 等待的节点订阅解锁消息, 收到后立即重试; 同一节点同一个key只有排在最前的等待者向redis竞争,
+ * 其余等待者在本地排队. 消息丢失或锁到期自动释放时, 按带随机抖动的退避时间重试.
+ * <p>
+ * 持有中的锁登记在租约表中, 由WatchDogThreadPool的单个线程定时检查,
+ * 到期的租约(过去三分之一锁时间)通过一次管道批量续期, 线程数与持有的锁数量无关.
+ * <p>
+ * 分层模式下同一节点先按key在本地排队, 本地获胜者才向redis加锁; 释放时若本地仍有等待者,
+ * 保留redis锁直接交给下一个等待者, 连续交接超过MAX_HANDOFFS次后释放redis锁, 让其他节点有机会获取.
+ * 本地锁按key一一对应而不是分段, 交接的是某个key的redis锁, 分段会让不同key互相阻塞.
+ *
+ * @author: 李小熊
+ **/
+public class RedisLockManager implements MessageListener {
+    private static final String CHANNEL = "rainbowCache:lockReleased";
+    private static final byte[] CHANNEL_BYTES = CHANNEL.getBytes(StandardCharsets.UTF_8);
+    private static final long MIN_BACKOFF = 10L;
+    private static final long MAX_BACKOFF = 1000L;
+    /**
+     * 租约检查间隔(毫秒)
+     */
+    private static final long RENEW_INTERVAL = 200L;
+    /**
+     * 分层模式下本地连续交接redis锁的最大次数
+     */
+    private static final int MAX_HANDOFFS = 16;
+    private static final byte[] UNLOCK_SCRIPT = ("if redis.call('get', KEYS[1]) == ARGV[1] then "
+            + "redis.call('del', KEYS[1]) "
+            + "redis.call('publish', ARGV[2], KEYS[1]) "
+            + "return 1 end "
+            + "return 0").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RENEW_SCRIPT = ("if redis.call('get', KEYS[1]) == ARGV[1] then "
+            + "return redis.call('pexpire', KEYS[1], ARGV[2]) end "
+            + "return 0").getBytes(StandardCharsets.UTF_8);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    /**
+     * 本节点正在等待的key
+     */
+    private final ConcurrentHashMap<String, Waiters> waiters = new ConcurrentHashMap<>();
+    /**
+     * 持有中的锁, key为token
+     */
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+    /**
+     * 分层模式的本地锁
+     */
+    private final ConcurrentHashMap<String, LocalLock> locals = new ConcurrentHashMap<>();
+    private volatile RedisMessageListenerContainer container;
+    private volatile ScheduledFuture<?> renewTask;
+    /**
+     * 发送续期命令的执行器, 为null时在续期线程中发送
+     */
+    private volatile RainbowExecutor executor;
+    private final AtomicBoolean renewing = new AtomicBoolean();
+
+    public RedisLockManager(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 设置发送续期命令的执行器, 续期线程只负责定时检查, 不等待redis响应
+     *
+     * @param executor executor
+     */
+    public void setExecutor(RainbowExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 加锁, 锁被占用时等待, 持有期间自动续期直到unlock
+     *
+     * @param key       key
+     * @param leaseTime 锁自动释放时间(毫秒)
+     * @param timeout   等待超时时间(毫秒), -1为一直等待
+     * @param stats     stats
+     * @return 持有锁的token, 用于解锁和续期
+     * @throws InterruptedException interruptedException
+     * @throws TimeoutException     等待超时
+     */
+    public String lock(String key, long leaseTime, long timeout, LockStats stats)
+            throws InterruptedException, TimeoutException {
+        long startTime = System.nanoTime();
+        return acquire(key, leaseTime, startTime, deadline(startTime, timeout), timeout, stats);
+    }
+
+    /**
+     * 分层模式加锁, 本节点同一个key的调用者先在本地排队, 支持同一线程重入
+     *
+     * @param key       key
+     * @param leaseTime 锁自动释放时间(毫秒)
+     * @param timeout   等待超时时间(毫秒), 包含本地排队时间, -1为一直等待
+     * @param stats     stats
+     * @return 持有锁的token, 用于unlockHierarchical
+     * @throws InterruptedException interruptedException
+     * @throws TimeoutException     等待超时
+     */
+    public String lockHierarchical(String key, long leaseTime, long timeout, LockStats stats)
+            throws InterruptedException, TimeoutException {
+        long startTime = System.nanoTime();
+        long deadline = deadline(startTime, timeout);
+        LocalLock local = referenceLocal(key);
+        boolean locked = false;
+        try {
+            if (!local.lock.tryLock(remaining(deadline), TimeUnit.NANOSECONDS)) {
+                releaseIfIdle(key, local);
+                throw timeout(stats, timeout);
+            }
+            locked = true;
+            // 上一个本地持有者交接过来的redis锁
+            String token = local.token;
+            if (token != null && leases.containsKey(token)) {
+                if (local.lock.getHoldCount() == 1) {
+                    stats.recordHandoff();
+                }
+                stats.recordAcquire(System.nanoTime() - startTime);
+                return token;
+            }
+            token = acquire(key, leaseTime, startTime, deadline, timeout, stats);
+            local.token = token;
+            local.handoffs = 0;
+            return token;
+        } catch (Throwable e) {
+            if (locked) {
+                local.lock.unlock();
+            }
+            dereferenceLocal(key, local);
+            throw e;
+        }
+    }
+
+    /**
+     * 分层模式解锁, 本地还有等待者时保留redis锁交给下一个等待者
+     *
+     * @param key   key
+     * @param token lockHierarchical返回的token
+     */
+    public void unlockHierarchical(String key, String token) {
+        LocalLock local = locals.get(key);
+        if (local == null || !local.lock.isHeldByCurrentThread()) {
+            unlock(key, token);
+            return;
+        }
+        try {
+            // 重入时只释放本地锁
+            if (local.lock.getHoldCount() > 1) {
+                return;
+            }
+            if (local.lock.hasQueuedThreads() && local.handoffs < MAX_HANDOFFS && leases.containsKey(token)) {
+                local.handoffs++;
+                return;
+            }
+            local.token = null;
+            local.handoffs = 0;
+            unlock(key, token);
+        } finally {
+            local.lock.unlock();
+            dereferenceLocal(key, local);
+        }
+    }
+
+    /**
+     * 本地等待超时后, 若交接给自己的redis锁已无人使用则释放
+     *
+     * @param key   key
+     * @param local local
+     */
+    private void releaseIfIdle(String key, LocalLock local) {
+        if (!local.lock.tryLock()) {
+            return;
+        }
+        try {
+            if (local.lock.getHoldCount() == 1 && local.token != null && !local.lock.hasQueuedThreads()) {
+                unlock(key, local.token);
+                local.token = null;
+                local.handoffs = 0;
+            }
+        } finally {
+            local.lock.unlock();
+        }
+    }
+
+    /**
+     * 向redis加锁
+     *
+     * @param key       key
+     * @param leaseTime 锁自动释放时间(毫秒)
+     * @param startTime 开始时间(纳秒)
+     * @param deadline  等待截止时间(纳秒)
+     * @param timeout   等待超时时间(毫秒)
+     * @param stats     stats
+     * @return token
+     * @throws InterruptedException interruptedException
+     * @throws TimeoutException     等待超时
+     */
+    private String acquire(String key, long leaseTime, long startTime, long deadline, long timeout, LockStats stats)
+            throws InterruptedException, TimeoutException {
+        String token = UUID.randomUUID().toString();
+        if (tryLock(key, token, leaseTime)) {
+            stats.recordAcquire(System.nanoTime() - startTime);
+            return hold(key, token, leaseTime);
+        }
+        stats.recordContention();
+        subscribe();
+
+        Waiters local = reference(key);
+        try {
+            // 本地排队, 只有拿到gate的等待者向redis竞争
+            if (!local.gate.tryLock(remaining(deadline), TimeUnit.NANOSECONDS)) {
+                throw timeout(stats, timeout);
+            }
+            try {
+                long backoff = MIN_BACKOFF;
+                while (true) {
+                    local.released.drainPermits();
+                    if (tryLock(key, token, leaseTime)) {
+                        stats.recordAcquire(System.nanoTime() - startTime);
+                        return hold(key, token, leaseTime);
+                    }
+                    stats.recordContention();
+                    long remaining = remaining(deadline);
+                    if (remaining <= 0L) {
+                        throw timeout(stats, timeout);
+                    }
+                    // 等待解锁消息, 最多等待一个退避时间
+                    long jitter = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                    local.released.tryAcquire(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(jitter)),
+                            TimeUnit.NANOSECONDS);
+                    backoff = Math.min(MAX_BACKOFF, backoff * 2);
+                }
+            } finally {
+                local.gate.unlock();
+            }
+        } finally {
+            dereference(key, local);
+        }
+    }
+
+    /**
+     * 尝试加锁一次
+     *
+     * @param key       key
+     * @param token     token
+     * @param leaseTime 锁自动释放时间(毫秒)
+     * @return 是否加锁成功
+     */
+    private boolean tryLock(String key, String token, long leaseTime) {
+        Boolean success = redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(bytes(key),
+                bytes(token), Expiration.milliseconds(leaseTime), RedisStringCommands.SetOption.SET_IF_ABSENT));
+        if (success == null) {
+            throw new RuntimeException("lock error");
+        }
+        return success;
+    }
+
+    /**
+     * 解锁, 仅当锁仍由token持有时删除, 并通知等待者
+     *
+     * @param key   key
+     * @param token token
+     * @return 是否解锁成功
+     */
+    public boolean unlock(String key, String token) {
+        leases.remove(token);
+        Long result = redisTemplate.execute((RedisCallback<Long>) connection -> connection.eval(UNLOCK_SCRIPT,
+                ReturnType.INTEGER, 1, bytes(key), bytes(token), CHANNEL_BYTES));
+        // 本节点的等待者不必等待消息
+        signal(key);
+        return result != null && result == 1L;
+    }
+
+    /**
+     * 登记租约, 第一次持有锁时启动续期任务
+     *
+     * @param key       key
+     * @param token     token
+     * @param leaseTime 锁自动释放时间(毫秒)
+     * @return token
+     */
+    private String hold(String key, String token, long leaseTime) {
+        leases.put(token, new Lease(key, token, leaseTime));
+        if (renewTask == null) {
+            synchronized (this) {
+                if (renewTask == null) {
+                    renewTask = WatchDogThreadPool.getInstance().scheduleWithFixedDelay(this::renew,
+                            RENEW_INTERVAL, RENEW_INTERVAL, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        return token;
+    }
+
+    /**
+     * 定时续期检查, 设置了执行器时在执行器中续期, 上一次续期未完成时跳过; 执行器拒绝时直接续期
+     */
+    private void renew() {
+        RainbowExecutor executor = this.executor;
+        if (executor == null || leases.isEmpty()) {
+            renewLeases();
+            return;
+        }
+        if (!renewing.compareAndSet(false, true)) {
+            return;
+        }
+        boolean submitted = executor.execute(() -> {
+            try {
+                renewLeases();
+            } finally {
+                renewing.set(false);
+            }
+        });
+        if (!submitted) {
+            renewing.set(false);
+            renewLeases();
+        }
+    }
+
+    /**
+     * 批量续期到期的租约, 续期失败(锁已过期或被他人持有)的租约移出租约表
+     */
+    private void renewLeases() {
+        if (leases.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<Lease> due = new ArrayList<>();
+        for (Lease lease : leases.values()) {
+            if (lease.renewTime <= now) {
+                due.add(lease);
+            }
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        List<Object> results;
+        try {
+            results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Lease lease : due) {
+                    connection.eval(RENEW_SCRIPT, ReturnType.INTEGER, 1, bytes(lease.key), bytes(lease.token),
+                            bytes(String.valueOf(lease.leaseTime)));
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // redis暂时不可用, 下次检查时重试
+            return;
+        }
+        for (int i = 0; i < due.size(); i++) {
+            Lease lease = due.get(i);
+            Object result = i < results.size() ? results.get(i) : null;
+            if (result instanceof Long && (Long) result == 1L) {
+                lease.renewTime = now + lease.leaseTime / 3;
+            } else {
+                leases.remove(lease.token, lease);
+            }
+        }
+    }
+
+    /**
+     * 停止订阅
+     *
+     * @throws Exception exception
+     */
+    public void stop() throws Exception {
+        ScheduledFuture<?> renewTask = this.renewTask;
+        if (renewTask != null) {
+            renewTask.cancel(false);
+        }
+        RedisMessageListenerContainer container = this.container;
+        if (container != null) {
+            container.destroy();
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        signal(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 第一次等待锁时订阅解锁消息
+     */
+    private void subscribe() {
+        if (container != null) {
+            return;
+        }
+        synchronized (this) {
+            if (container != null) {
+                return;
+            }
+            RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+            container.setConnectionFactory(redisTemplate.getConnectionFactory());
+            container.addMessageListener(this, new ChannelTopic(CHANNEL));
+            container.afterPropertiesSet();
+            container.start();
+            this.container = container;
+        }
+    }
+
+    private void signal(String key) {
+        Waiters local = waiters.get(key);
+        if (local != null) {
+            local.released.release();
+        }
+    }
+
+    private Waiters reference(String key) {
+        return waiters.compute(key, (k, v) -> {
+            Waiters local = v == null ? new Waiters() : v;
+            local.references++;
+            return local;
+        });
+    }
+
+    private void dereference(String key, Waiters local) {
+        waiters.computeIfPresent(key, (k, v) -> v == local && --v.references == 0 ? null : v);
+    }
+
+    private LocalLock referenceLocal(String key) {
+        return locals.compute(key, (k, v) -> {
+            LocalLock local = v == null ? new LocalLock() : v;
+            local.references++;
+            return local;
+        });
+    }
+
+    private void dereferenceLocal(String key, LocalLock local) {
+        locals.computeIfPresent(key, (k, v) -> v == local && --v.references == 0 ? null : v);
+    }
+
+    private static long deadline(long startTime, long timeout) {
+        return timeout < 0 ? Long.MAX_VALUE : startTime + TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    private static long remaining(long deadline) {
+        return deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+    }
+
+    private static TimeoutException timeout(LockStats stats, long timeout) {
+        stats.recordTimeout();
+        return new TimeoutException("The lock acquisition time is too long for more than " + timeout + " milliseconds");
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 持有中的锁
+     */
+    private static final class Lease {
+        private final String key;
+        private final String token;
+        private final long leaseTime;
+        /**
+         * 下次续期时间点(毫秒)
+         */
+        private volatile long renewTime;
+
+        private Lease(String key, String token, long leaseTime) {
+            this.key = key;
+            this.token = token;
+            this.leaseTime = leaseTime;
+            this.renewTime = System.currentTimeMillis() + leaseTime / 3;
+        }
+    }
+
+    /**
+     * 分层模式下本节点同一个key的本地锁
+     */
+    private static final class LocalLock {
+        private final ReentrantLock lock = new ReentrantLock(true);
+        /**
+         * 本地持有中的redis锁token, 由lock保护
+         */
+        private String token;
+        /**
+         * 连续交接次数, 由lock保护
+         */
+        private int handoffs;
+        /**
+         * 使用者个数, 在locals.compute中修改
+         */
+        private int references;
+    }
+
+    /**
+     * 本节点同一个key的等待者
+     */
+    private static final class Waiters {
+        /**
+         * 公平锁, 等待者按顺序向redis竞争
+         */
+        private final ReentrantLock gate = new ReentrantLock(true);
+        /**
+         * 收到解锁消息时释放一个许可
+         */
+        private final Semaphore released = new Semaphore(0);
+        /**
+         * 等待者个数, 在waiters.compute中修改
+         */
+        private int references;
+    }
+}
@@ -0,0 +1,157 @@
+package cn.threeoranges.metrics;
+
+import cn.threeoranges.properties.enums.RainbowCacheTypeEnum;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存统计
+ * <p>
+ * 按命名空间(注解中的keys)和缓存级别(simple本地缓存 / redis)记录命中、未命中和加载耗时,
+ * 以及本地缓存的淘汰、过期、估算内存, redis命令耗时和分布式锁的等待情况.
+ * 统计使用LongAdder, 命中路径上不创建对象; 不依赖Micrometer, 由RainbowCacheMeterBinder导出.
+ *
+ * @author: 李小熊
+ **/
+public final class CacheMetrics {
+    private final ConcurrentMap<String, CacheStats> simpleStats = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CacheStats> redisStats = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LockStats> lockStats = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Latency> redisLatency = new ConcurrentHashMap<>();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder estimatedBytes = new LongAdder();
+    private volatile Listener listener;
+
+    private CacheMetrics() {
+    }
+
+    public static CacheMetrics metrics() {
+        return Instance.INSTANCE;
+    }
+
+    /**
+     * 获取命名空间的统计
+     *
+     * @param engine    缓存级别, SIMPLE或REDIS
+     * @param namespace 命名空间
+     * @return stats
+     */
+    public CacheStats stats(RainbowCacheTypeEnum engine, String namespace) {
+        ConcurrentMap<String, CacheStats> stats = RainbowCacheTypeEnum.REDIS.equals(engine) ? redisStats : simpleStats;
+        CacheStats cacheStats = stats.get(namespace);
+        if (cacheStats != null) {
+            return cacheStats;
+        }
+        cacheStats = stats.computeIfAbsent(namespace,
+                n -> new CacheStats(RainbowCacheTypeEnum.REDIS.equals(engine) ? "redis" : "simple", n));
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onCacheStats(cacheStats);
+        }
+        return cacheStats;
+    }
+
+    /**
+     * 获取分布式锁的统计
+     *
+     * @param key 注解中的锁key
+     * @return stats
+     */
+    public LockStats lock(String key) {
+        LockStats stats = lockStats.get(key);
+        if (stats != null) {
+            return stats;
+        }
+        stats = lockStats.computeIfAbsent(key, LockStats::new);
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onLockStats(stats);
+        }
+        return stats;
+    }
+
+    /**
+     * 获取redis命令的耗时统计
+     *
+     * @param operation 命令类型
+     * @return latency
+     */
+    public Latency redisLatency(String operation) {
+        Latency latency = redisLatency.get(operation);
+        if (latency != null) {
+            return latency;
+        }
+        latency = redisLatency.computeIfAbsent(operation, o -> new Latency());
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onRedisLatency(operation, latency);
+        }
+        return latency;
+    }
+
+    public void recordEviction() {
+        evictions.increment();
+    }
+
+    public void recordExpiration() {
+        expirations.increment();
+    }
+
+    /**
+     * 本地缓存估算内存变化
+     *
+     * @param bytes 字节数, 删除时为负数
+     */
+    public void addEstimatedBytes(long bytes) {
+        estimatedBytes.add(bytes);
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes.sum();
+    }
+
+    /**
+     * 设置监听器, 已有的统计立即回调一次, 之后新建的统计创建时回调
+     *
+     * @param listener listener
+     */
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+        for (CacheStats stats : simpleStats.values()) {
+            listener.onCacheStats(stats);
+        }
+        for (CacheStats stats : redisStats.values()) {
+            listener.onCacheStats(stats);
+        }
+        for (LockStats stats : lockStats.values()) {
+            listener.onLockStats(stats);
+        }
+        redisLatency.forEach(listener::onRedisLatency);
+    }
+
+    /**
+     * 统计创建监听, 可能对同一统计回调多次
+     */
+    public interface Listener {
+        void onCacheStats(CacheStats stats);
+
+        void onLockStats(LockStats stats);
+
+        void onRedisLatency(String operation, Latency latency);
+    }
+
+    private static class Instance {
+        private static final CacheMetrics INSTANCE = new CacheMetrics();
+    }
+}
@@ -0,0 +1,67 @@
+package cn.threeoranges.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个命名空间在某一级缓存上的统计
+ *
+ * @author: 李小熊
+ **/
+public final class CacheStats {
+    private final String engine;
+    private final String namespace;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final Latency loadLatency = new Latency();
+
+    CacheStats(String engine, String namespace) {
+        this.engine = engine;
+        this.namespace = namespace;
+    }
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * 记录一次业务加载
+     *
+     * @param nanos   耗时(纳秒)
+     * @param success 是否成功
+     */
+    public void recordLoad(long nanos, boolean success) {
+        loadLatency.record(nanos);
+        if (!success) {
+            loadFailures.increment();
+        }
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    public Latency getLoadLatency() {
+        return loadLatency;
+    }
+}
@@ -0,0 +1,57 @@
+package cn.threeoranges.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * 耗时统计, 记录次数、总耗时和最大耗时
+ * <p>
+ * 接入Micrometer后通过recorder把每次耗时写入Timer, 由Timer生成直方图.
+ *
+ * @author: 李小熊
+ **/
+public final class Latency {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalTime = new LongAdder();
+    private final LongAccumulator maxTime = new LongAccumulator(Math::max, 0L);
+    private volatile LongConsumer recorder;
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时(纳秒)
+     */
+    public void record(long nanos) {
+        count.increment();
+        totalTime.add(nanos);
+        maxTime.accumulate(nanos);
+        LongConsumer recorder = this.recorder;
+        if (recorder != null) {
+            recorder.accept(nanos);
+        }
+    }
+
+    /**
+     * 添加耗时记录器
+     *
+     * @param recorder 接收每次耗时(纳秒)
+     */
+    public synchronized void addRecorder(LongConsumer recorder) {
+        LongConsumer current = this.recorder;
+        this.recorder = current == null ? recorder : current.andThen(recorder);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getTotalTime(TimeUnit unit) {
+        return (double) totalTime.sum() / unit.toNanos(1L);
+    }
+
+    public double getMaxTime(TimeUnit unit) {
+        return (double) maxTime.get() / unit.toNanos(1L);
+    }
+}
@@ -0,0 +1,67 @@
+package cn.threeoranges.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个分布式锁的统计
+ *
+ * @author: 李小熊
+ **/
+public final class LockStats {
+    private final String key;
+    private final Latency acquireLatency = new Latency();
+    private final LongAdder contentions = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder handoffs = new LongAdder();
+
+    LockStats(String key) {
+        this.key = key;
+    }
+
+    /**
+     * 记录一次获取锁成功
+     *
+     * @param nanos 从开始尝试到获取成功的耗时(纳秒)
+     */
+    public void recordAcquire(long nanos) {
+        acquireLatency.record(nanos);
+    }
+
+    /**
+     * 记录一次获取锁失败(锁被其他调用者持有)
+     */
+    public void recordContention() {
+        contentions.increment();
+    }
+
+    public void recordTimeout() {
+        timeouts.increment();
+    }
+
+    /**
+     * 记录一次本地交接, 未访问redis直接获得锁
+     */
+    public void recordHandoff() {
+        handoffs.increment();
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Latency getAcquireLatency() {
+        return acquireLatency;
+    }
+
+    public long getContentions() {
+        return contentions.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getHandoffs() {
+        return handoffs.sum();
+    }
+}
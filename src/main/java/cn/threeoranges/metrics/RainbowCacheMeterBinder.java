@@ -0,0 +1,123 @@
+package cn.threeoranges.metrics;
+
+import cn.threeoranges.cache.SimpleCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把CacheMetrics中的统计导出到Micrometer
+ * <p>
+ * 计数类统计以FunctionCounter/Gauge形式按需读取, 耗时类统计写入带直方图的Timer.
+ * 之后新出现的命名空间、锁和redis命令在首次使用时注册.
+ *
+ * @author: 李小熊
+ **/
+public class RainbowCacheMeterBinder implements MeterBinder, CacheMetrics.Listener {
+    private static final String PREFIX = "rainbow.cache";
+
+    private final CacheMetrics metrics = CacheMetrics.metrics();
+    private final List<MeterRegistry> registries = new CopyOnWriteArrayList<>();
+    /**
+     * 已经接收耗时的Timer, 防止重复回调时同一耗时被记录多次
+     */
+    private final Set<Meter> timers = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        registries.add(registry);
+        SimpleCache simpleCache = SimpleCache.simpleCache();
+        simpleCache.enableEstimatedBytes();
+        Gauge.builder(PREFIX + ".size", simpleCache, SimpleCache::size)
+                .tag("engine", "simple")
+                .description("本地缓存个数")
+                .register(registry);
+        Gauge.builder(PREFIX + ".estimated.bytes", metrics, CacheMetrics::getEstimatedBytes)
+                .tag("engine", "simple")
+                .description("本地缓存估算堆内存")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".evictions", metrics, CacheMetrics::getEvictions)
+                .tags("engine", "simple", "cause", "size")
+                .description("本地缓存容量淘汰次数")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".evictions", metrics, CacheMetrics::getExpirations)
+                .tags("engine", "simple", "cause", "expired")
+                .description("本地缓存过期删除次数")
+                .register(registry);
+        metrics.setListener(this);
+    }
+
+    @Override
+    public void onCacheStats(CacheStats stats) {
+        for (MeterRegistry registry : registries) {
+            String[] tags = {"engine", stats.getEngine(), "namespace", stats.getNamespace()};
+            FunctionCounter.builder(PREFIX + ".gets", stats, CacheStats::getHits)
+                    .tags(tags).tag("result", "hit")
+                    .description("缓存命中次数")
+                    .register(registry);
+            FunctionCounter.builder(PREFIX + ".gets", stats, CacheStats::getMisses)
+                    .tags(tags).tag("result", "miss")
+                    .description("缓存未命中次数")
+                    .register(registry);
+            FunctionCounter.builder(PREFIX + ".load.failures", stats, CacheStats::getLoadFailures)
+                    .tags(tags)
+                    .description("业务加载失败次数")
+                    .register(registry);
+            bind(Timer.builder(PREFIX + ".load")
+                    .tags(tags)
+                    .description("缓存未命中时业务加载耗时")
+                    .publishPercentileHistogram()
+                    .register(registry), stats.getLoadLatency());
+        }
+    }
+
+    @Override
+    public void onLockStats(LockStats stats) {
+        for (MeterRegistry registry : registries) {
+            FunctionCounter.builder(PREFIX + ".lock.contentions", stats, LockStats::getContentions)
+                    .tag("key", stats.getKey())
+                    .description("获取锁失败次数")
+                    .register(registry);
+            FunctionCounter.builder(PREFIX + ".lock.timeouts", stats, LockStats::getTimeouts)
+                    .tag("key", stats.getKey())
+                    .description("获取锁超时次数")
+                    .register(registry);
+            FunctionCounter.builder(PREFIX + ".lock.handoffs", stats, LockStats::getHandoffs)
+                    .tag("key", stats.getKey())
+                    .description("分层模式本地交接次数")
+                    .register(registry);
+            bind(Timer.builder(PREFIX + ".lock.acquire")
+                    .tag("key", stats.getKey())
+                    .description("获取锁耗时")
+                    .publishPercentileHistogram()
+                    .register(registry), stats.getAcquireLatency());
+        }
+    }
+
+    @Override
+    public void onRedisLatency(String operation, Latency latency) {
+        for (MeterRegistry registry : registries) {
+            bind(Timer.builder(PREFIX + ".redis")
+                    .tag("operation", operation)
+                    .description("redis命令耗时")
+                    .publishPercentileHistogram()
+                    .register(registry), latency);
+        }
+    }
+
+    private void bind(Timer timer, Latency latency) {
+        if (timers.add(timer)) {
+            latency.addRecorder(nanos -> timer.record(nanos, TimeUnit.NANOSECONDS));
+        }
+    }
+}
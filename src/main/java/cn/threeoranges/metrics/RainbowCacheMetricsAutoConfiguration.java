@@ -0,0 +1,23 @@
+package cn.threeoranges.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 引入Micrometer时自动导出缓存统计
+ *
+ * @author: 李小熊
+ **/
+@Configuration
+@ConditionalOnClass(MeterRegistry.class)
+public class RainbowCacheMetricsAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RainbowCacheMeterBinder rainbowCacheMeterBinder() {
+        return new RainbowCacheMeterBinder();
+    }
+}
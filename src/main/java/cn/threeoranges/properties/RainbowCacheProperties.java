@@ -1,6 +1,8 @@
 package cn.threeoranges.properties;
 
+import cn.threeoranges.properties.enums.RainbowCacheCodecEnum;
 import cn.threeoranges.properties.enums.RainbowCacheTypeEnum;
+import cn.threeoranges.properties.enums.RainbowExecutorTypeEnum;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
@@ -14,10 +16,94 @@ import org.springframework.context.annotation.Configuration;
 public class RainbowCacheProperties {
     private RainbowCacheTypeEnum type;
     private long timeOut;
+    /**
+     * 本地缓存最大个数, -1为不限制
+     */
+    private long maximumSize;
+    /**
+     * 本地缓存最大权重(估算字节数), -1为不限制
+     */
+    private long maximumWeight;
+    /**
+     * 缓存未命中时等待其他调用者加载的超时时间(毫秒), 超时后自行加载, -1为一直等待
+     */
+    private long loadTimeout;
+    /**
+     * redis缓存未命中时是否跨节点只加载一次
+     */
+    private boolean distributedLoad;
+    /**
+     * TIERED模式本地一级缓存有效时间(秒)
+     */
+    private long localExpiration;
+    /**
+     * 缓存值序列化方式
+     */
+    private RainbowCacheCodecEnum codec;
+    /**
+     * 序列化结果超过该字节数时压缩, -1为不压缩
+     */
+    private int compressThreshold;
+    /**
+     * 本地缓存是否序列化存储
+     */
+    private boolean serializedLocal;
+    /**
+     * 本地缓存堆外存储容量(字节), -1为不使用堆外存储
+     */
+    private long offHeapCapacity;
+    /**
+     * 本地缓存快照文件路径, 为空时不开启快照
+     */
+    private String snapshotPath;
+    /**
+     * 定时写入快照的间隔(秒), 小于等于0时只在关闭时写入
+     */
+    private long snapshotInterval;
+    /**
+     * 快照文件最大字节数, 超过后不再写入剩余缓存
+     */
+    private long snapshotMaxBytes;
+    /**
+     * 异步任务执行方式
+     */
+    private RainbowExecutorTypeEnum executor;
+    /**
+     * 同时执行和排队的异步任务上限, 超出时放弃本次任务
+     */
+    private int executorMaxConcurrency;
+    /**
+     * redis中的命名空间是否使用hash tag({namespace}), 使同一个命名空间的key落在集群的同一个slot
+     */
+    private boolean hashTag;
+    /**
+     * 热点key识别的抽样间隔, 每多少次访问抽样一次, 小于等于0为不识别
+     */
+    private int hotKeySampleRate;
+    /**
+     * TIERED模式热点key在本地一级缓存的有效时间(秒), 不超过redis中的有效时间
+     */
+    private long hotKeyLocalExpiration;
 
     public RainbowCacheProperties() {
         this.type = RainbowCacheTypeEnum.SIMPLE;
         this.timeOut = 30000;
+        this.maximumSize = -1L;
+        this.maximumWeight = -1L;
+        this.loadTimeout = 3000L;
+        this.distributedLoad = false;
+        this.localExpiration = 5L;
+        this.codec = RainbowCacheCodecEnum.DEFAULT;
+        this.compressThreshold = -1;
+        this.serializedLocal = false;
+        this.offHeapCapacity = -1L;
+        this.snapshotInterval = 300L;
+        this.snapshotMaxBytes = 256L * 1024 * 1024;
+        this.executor = RainbowExecutorTypeEnum.AUTO;
+        this.executorMaxConcurrency = 1024;
+        this.hashTag = false;
+        this.hotKeySampleRate = 16;
+        this.hotKeyLocalExpiration = 60L;
     }
 
     public RainbowCacheTypeEnum getType() {
@@ -35,4 +121,140 @@ public class RainbowCacheProperties {
     public void setTimeOut(long timeOut) {
         this.timeOut = timeOut;
     }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public void setMaximumWeight(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+    }
+
+    public long getLoadTimeout() {
+        return loadTimeout;
+    }
+
+    public void setLoadTimeout(long loadTimeout) {
+        this.loadTimeout = loadTimeout;
+    }
+
+    public boolean isDistributedLoad() {
+        return distributedLoad;
+    }
+
+    public void setDistributedLoad(boolean distributedLoad) {
+        this.distributedLoad = distributedLoad;
+    }
+
+    public long getLocalExpiration() {
+        return localExpiration;
+    }
+
+    public void setLocalExpiration(long localExpiration) {
+        this.localExpiration = localExpiration;
+    }
+
+    public RainbowCacheCodecEnum getCodec() {
+        return codec;
+    }
+
+    public void setCodec(RainbowCacheCodecEnum codec) {
+        this.codec = codec;
+    }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    public boolean isSerializedLocal() {
+        return serializedLocal;
+    }
+
+    public void setSerializedLocal(boolean serializedLocal) {
+        this.serializedLocal = serializedLocal;
+    }
+
+    public long getOffHeapCapacity() {
+        return offHeapCapacity;
+    }
+
+    public void setOffHeapCapacity(long offHeapCapacity) {
+        this.offHeapCapacity = offHeapCapacity;
+    }
+
+    public String getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    public void setSnapshotPath(String snapshotPath) {
+        this.snapshotPath = snapshotPath;
+    }
+
+    public long getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(long snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public long getSnapshotMaxBytes() {
+        return snapshotMaxBytes;
+    }
+
+    public void setSnapshotMaxBytes(long snapshotMaxBytes) {
+        this.snapshotMaxBytes = snapshotMaxBytes;
+    }
+
+    public RainbowExecutorTypeEnum getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(RainbowExecutorTypeEnum executor) {
+        this.executor = executor;
+    }
+
+    public int getExecutorMaxConcurrency() {
+        return executorMaxConcurrency;
+    }
+
+    public void setExecutorMaxConcurrency(int executorMaxConcurrency) {
+        this.executorMaxConcurrency = executorMaxConcurrency;
+    }
+
+    public boolean isHashTag() {
+        return hashTag;
+    }
+
+    public void setHashTag(boolean hashTag) {
+        this.hashTag = hashTag;
+    }
+
+    public int getHotKeySampleRate() {
+        return hotKeySampleRate;
+    }
+
+    public void setHotKeySampleRate(int hotKeySampleRate) {
+        this.hotKeySampleRate = hotKeySampleRate;
+    }
+
+    public long getHotKeyLocalExpiration() {
+        return hotKeyLocalExpiration;
+    }
+
+    public void setHotKeyLocalExpiration(long hotKeyLocalExpiration) {
+        this.hotKeyLocalExpiration = hotKeyLocalExpiration;
+    }
 }
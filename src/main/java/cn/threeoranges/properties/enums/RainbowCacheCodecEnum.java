@@ -0,0 +1,24 @@
+package cn.threeoranges.properties.enums;
+
+/**
+ * 缓存序列化方式
+ *
+ * @author: 李小熊
+ **/
+public enum RainbowCacheCodecEnum {
+    /**
+     * 使用RedisTemplate自身的序列化
+     */
+    DEFAULT,
+    /**
+     * jdk序列化
+     */
+    JDK,
+    /**
+     * 紧凑二进制序列化
+     */
+    COMPACT;
+
+    private RainbowCacheCodecEnum() {
+    }
+}
@@ -8,7 +8,11 @@ package cn.threeoranges.properties.enums;
  **/
 public enum RainbowCacheTypeEnum {
     SIMPLE,
-    REDIS;
+    REDIS,
+    /**
+     * 本地一级缓存 + redis二级缓存
+     */
+    TIERED;
 
     private RainbowCacheTypeEnum() {
     }
@@ -0,0 +1,24 @@
+package cn.threeoranges.properties.enums;
+
+/**
+ * 异步任务(缓存异步刷新、分布式锁续期)执行方式
+ *
+ * @author: 李小熊
+ **/
+public enum RainbowExecutorTypeEnum {
+    /**
+     * JDK21及以上使用虚拟线程, 否则使用线程池
+     */
+    AUTO,
+    /**
+     * 有界线程池
+     */
+    PLATFORM,
+    /**
+     * 虚拟线程, 当前JDK不支持时使用线程池
+     */
+    VIRTUAL;
+
+    private RainbowExecutorTypeEnum() {
+    }
+}
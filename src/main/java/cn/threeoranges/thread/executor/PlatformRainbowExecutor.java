@@ -0,0 +1,44 @@
+package cn.threeoranges.thread.executor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 有界线程池, 线程数为cpu核数(至少2), 空闲60s后回收; 队列满时放弃任务
+ *
+ * @author: 李小熊
+ **/
+final class PlatformRainbowExecutor implements RainbowExecutor {
+    private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+    private final ThreadPoolExecutor executorService;
+
+    PlatformRainbowExecutor(String name, int maxConcurrency) {
+        this.executorService = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxConcurrency)), r -> {
+            Thread thread = new Thread(r, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.executorService.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public boolean execute(Runnable command) {
+        try {
+            executorService.execute(command);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        executorService.shutdown();
+    }
+}
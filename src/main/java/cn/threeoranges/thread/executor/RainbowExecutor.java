@@ -0,0 +1,24 @@
+package cn.threeoranges.thread.executor;
+
+/**
+ * 异步任务执行, 用于缓存异步刷新、异步结果未命中时的加载和分布式锁续期
+ * <p>
+ * 可以在容器中注册自定义实现, 未注册时按rainbow.cache.executor配置创建.
+ *
+ * @author: 李小熊
+ **/
+public interface RainbowExecutor {
+    /**
+     * 提交任务
+     *
+     * @param command command
+     * @return 超出并发上限或已关闭时返回false, 任务不会执行
+     */
+    boolean execute(Runnable command);
+
+    /**
+     * 关闭, 不再接收新任务
+     */
+    default void shutdown() {
+    }
+}
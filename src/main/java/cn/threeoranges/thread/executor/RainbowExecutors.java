@@ -0,0 +1,56 @@
+package cn.threeoranges.thread.executor;
+
+import cn.threeoranges.properties.RainbowCacheProperties;
+import cn.threeoranges.properties.enums.RainbowExecutorTypeEnum;
+
+/**
+ * 创建异步任务执行器
+ *
+ * @author: 李小熊
+ **/
+public final class RainbowExecutors {
+    private static final String THREAD_NAME = "rainbow-cache-task";
+
+    private RainbowExecutors() {
+    }
+
+    /**
+     * 按配置创建, 配置虚拟线程但当前JDK不支持时使用线程池
+     *
+     * @param properties properties
+     * @return executor
+     */
+    public static RainbowExecutor create(RainbowCacheProperties properties) {
+        RainbowExecutorTypeEnum type = properties.getExecutor();
+        int maxConcurrency = properties.getExecutorMaxConcurrency();
+        if (type != RainbowExecutorTypeEnum.PLATFORM) {
+            RainbowExecutor executor = VirtualRainbowExecutor.create(THREAD_NAME, maxConcurrency);
+            if (executor != null) {
+                return executor;
+            }
+        }
+        return platform(THREAD_NAME, maxConcurrency);
+    }
+
+    /**
+     * 有界线程池
+     *
+     * @param name           线程名前缀
+     * @param maxConcurrency 排队的任务上限
+     * @return executor
+     */
+    public static RainbowExecutor platform(String name, int maxConcurrency) {
+        return new PlatformRainbowExecutor(name, maxConcurrency);
+    }
+
+    /**
+     * 虚拟线程
+     *
+     * @param name           线程名前缀
+     * @param maxConcurrency 同时执行的任务上限
+     * @return 当前JDK不支持虚拟线程时返回null
+     */
+    public static RainbowExecutor virtual(String name, int maxConcurrency) {
+        return VirtualRainbowExecutor.create(name, maxConcurrency);
+    }
+}
@@ -0,0 +1,73 @@
+package cn.threeoranges.thread.executor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程, 每个任务一个线程, 同时执行的任务数不超过上限
+ * <p>
+ * 通过反射调用Thread.ofVirtual(), 在JDK8上编译和运行不受影响.
+ *
+ * @author: 李小熊
+ **/
+final class VirtualRainbowExecutor implements RainbowExecutor {
+    private final ThreadFactory threadFactory;
+    private final Semaphore permits;
+    private volatile boolean shutdown;
+
+    private VirtualRainbowExecutor(ThreadFactory threadFactory, int maxConcurrency) {
+        this.threadFactory = threadFactory;
+        this.permits = new Semaphore(Math.max(1, maxConcurrency));
+    }
+
+    /**
+     * 创建虚拟线程执行器
+     *
+     * @param name           线程名前缀
+     * @param maxConcurrency 同时执行的任务上限
+     * @return 当前JDK不支持虚拟线程时返回null
+     */
+    static VirtualRainbowExecutor create(String name, int maxConcurrency) {
+        ThreadFactory threadFactory = virtualThreadFactory(name);
+        return threadFactory == null ? null : new VirtualRainbowExecutor(threadFactory, maxConcurrency);
+    }
+
+    private static ThreadFactory virtualThreadFactory(String name) {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = ofVirtual.invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // JDK21以下没有虚拟线程, JDK19/20未开启预览时调用失败
+            return null;
+        }
+    }
+
+    @Override
+    public boolean execute(Runnable command) {
+        if (shutdown || !permits.tryAcquire()) {
+            return false;
+        }
+        try {
+            threadFactory.newThread(() -> {
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            }).start();
+            return true;
+        } catch (RuntimeException | OutOfMemoryError e) {
+            permits.release();
+            return false;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+}
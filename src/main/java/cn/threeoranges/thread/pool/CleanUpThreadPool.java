@@ -0,0 +1,38 @@
+package cn.threeoranges.thread.pool;
+
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地缓存过期清理线程, 单个守护线程
+ *
+ * @author: 李小熊
+ **/
+public class CleanUpThreadPool {
+
+    private final ScheduledThreadPoolExecutor executorService = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "rainbow-cache-clean-up");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private CleanUpThreadPool() {}
+
+    public static CleanUpThreadPool getInstance() {
+        return Instance.INSTANCE;
+    }
+
+    private ScheduledThreadPoolExecutor getExecutorService() {
+        return executorService;
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return getExecutorService().scheduleWithFixedDelay(command, initialDelay, delay, unit);
+    }
+
+    private static class Instance {
+        private static final CleanUpThreadPool INSTANCE = new CleanUpThreadPool();
+    }
+}
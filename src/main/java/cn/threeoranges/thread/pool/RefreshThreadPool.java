@@ -0,0 +1,50 @@
+package cn.threeoranges.thread.pool;
+
+
+import cn.threeoranges.thread.executor.RainbowExecutor;
+import cn.threeoranges.thread.executor.RainbowExecutors;
+
+/**
+ * 缓存异步刷新线程池, 超出并发上限时放弃本次刷新
+ * <p>
+ * 默认使用有界线程池, 初始化时替换为按配置创建的执行器(JDK21及以上默认使用虚拟线程).
+ *
+ * @author: 李小熊
+ **/
+public class RefreshThreadPool {
+    private volatile RainbowExecutor executor = RainbowExecutors.platform("rainbow-cache-refresh", 1024);
+
+    private RefreshThreadPool() {
+    }
+
+    public static RefreshThreadPool getInstance() {
+        return Instance.INSTANCE;
+    }
+
+    /**
+     * 替换执行器, 原执行器中的任务继续执行完成
+     *
+     * @param executor executor
+     */
+    public void setExecutor(RainbowExecutor executor) {
+        RainbowExecutor previous = this.executor;
+        this.executor = executor;
+        if (previous != executor) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * 提交刷新任务
+     *
+     * @param command command
+     * @return 超出并发上限时返回false
+     */
+    public boolean execute(Runnable command) {
+        return executor.execute(command);
+    }
+
+    private static class Instance {
+        private static final RefreshThreadPool INSTANCE = new RefreshThreadPool();
+    }
+}
@@ -0,0 +1,40 @@
+package cn.threeoranges.thread.pool;
+
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地缓存快照写入线程, 单个守护线程
+ *
+ * @author: 李小熊
+ **/
+public class SnapshotThreadPool {
+
+    private final ScheduledThreadPoolExecutor executorService = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "rainbow-cache-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private SnapshotThreadPool() {
+        executorService.setRemoveOnCancelPolicy(true);
+    }
+
+    public static SnapshotThreadPool getInstance() {
+        return Instance.INSTANCE;
+    }
+
+    private ScheduledThreadPoolExecutor getExecutorService() {
+        return executorService;
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return getExecutorService().scheduleWithFixedDelay(command, initialDelay, delay, unit);
+    }
+
+    private static class Instance {
+        private static final SnapshotThreadPool INSTANCE = new SnapshotThreadPool();
+    }
+}
@@ -1,28 +1,37 @@
 package cn.threeoranges.thread.pool;
 
 
-import java.util.concurrent.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * 分布式锁续期线程, 单个守护线程负责所有持有中的锁
+ *
  * @author: 李小熊
  **/
 public class WatchDogThreadPool {
 
-    private final ThreadPoolExecutor executorService = new ThreadPoolExecutor(1, Integer.MAX_VALUE, 3L, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<>(1024), new ThreadPoolExecutor.AbortPolicy());
+    private final ScheduledThreadPoolExecutor executorService = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "rainbow-cache-watch-dog");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    private WatchDogThreadPool() {}
+    private WatchDogThreadPool() {
+        executorService.setRemoveOnCancelPolicy(true);
+    }
 
     public static WatchDogThreadPool getInstance() {
         return Instance.INSTANCE;
     }
 
-    private ThreadPoolExecutor getExecutorService() {
+    private ScheduledThreadPoolExecutor getExecutorService() {
         return executorService;
     }
 
-    public void execute(Runnable command) {
-        getExecutorService().execute(command);
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return getExecutorService().scheduleWithFixedDelay(command, initialDelay, delay, unit);
     }
 
     private static class Instance {